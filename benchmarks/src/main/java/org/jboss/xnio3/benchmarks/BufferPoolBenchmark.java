@@ -0,0 +1,135 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.xnio3.server.BufferCache;
+import org.jboss.xnio3.server.BufferPool;
+import org.jboss.xnio3.server.SizeClassBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code BufferPoolBenchmark}
+ * 
+ * The cost of an acquire/restitute round trip on the shared pools. The pools
+ * are shared by all the benchmark threads, run with <i>-t 1,2,4,...</i> to
+ * measure the contention. The pools are large enough for every thread to hold
+ * a buffer, so {@code peek()} never waits.
+ * 
+ * Created on Oct 17, 2026 at 9:02:14 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BufferPoolBenchmark {
+
+	private static final int MAX_ITEMS = 1024;
+
+	@Param({ "false", "true" })
+	public boolean direct;
+
+	@Param({ "512" })
+	public int capacity;
+
+	private BufferPool pool;
+	private BufferCache cache;
+	private SizeClassBufferPool sizeClassPool;
+
+	/**
+	 * Create the pools shared by all the threads
+	 */
+	@Setup
+	public void setup() {
+		this.pool = BufferPool.create(this.capacity, MAX_ITEMS, this.direct);
+		this.cache = new BufferCache(BufferPool.create(this.capacity, MAX_ITEMS, this.direct));
+		this.sizeClassPool = new SizeClassBufferPool(MAX_ITEMS, this.direct);
+	}
+
+	/**
+	 * @return the buffer, returned so that the acquire is not eliminated
+	 * @throws InterruptedException
+	 */
+	@Benchmark
+	public ByteBuffer peekRestitute() throws InterruptedException {
+		ByteBuffer buffer = this.pool.peek();
+		this.pool.restitute(buffer);
+		return buffer;
+	}
+
+	/**
+	 * @return the buffer
+	 */
+	@Benchmark
+	public ByteBuffer tryAcquireRestitute() {
+		ByteBuffer buffer = this.pool.tryAcquire();
+		this.pool.restitute(buffer);
+		return buffer;
+	}
+
+	/**
+	 * @return the buffer
+	 */
+	@Benchmark
+	public ByteBuffer cacheAcquireRestitute() {
+		ByteBuffer buffer = this.cache.tryAcquire();
+		this.cache.restitute(buffer);
+		return buffer;
+	}
+
+	/**
+	 * @return the buffer
+	 */
+	@Benchmark
+	public ByteBuffer sizeClassAcquireRestitute() {
+		ByteBuffer buffer = this.sizeClassPool.acquire(this.capacity);
+		this.sizeClassPool.restitute(buffer);
+		return buffer;
+	}
+
+	/**
+	 * The baseline: a new buffer for each request, as before the pools
+	 * 
+	 * @return the buffer
+	 */
+	@Benchmark
+	public ByteBuffer allocate() {
+		return this.direct ? ByteBuffer.allocateDirect(this.capacity) : ByteBuffer
+				.allocate(this.capacity);
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.xnio3.server.ContentCache;
+import org.jboss.xnio3.server.MappedContentStore;
+import org.jboss.xnio3.server.Payload;
+import org.jboss.xnio3.server.XnioUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@code PayloadBenchmark}
+ * 
+ * The cost of preparing the buffers of one response: the file read of every
+ * request done by the original {@code ReadChannelListener.initWriteBuffers()}
+ * against the views of the shared {@link ContentCache} and
+ * {@link MappedContentStore} payloads. The payload is a generated file of
+ * <i>size</i> bytes.
+ * 
+ * Created on Oct 17, 2026 at 9:18:40 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PayloadBenchmark {
+
+	private static final byte CRLF_BYTES[] = XnioUtils.CRLF.getBytes();
+
+	@Param({ "32641", "131072", "1048576" })
+	public int size;
+
+	private File file;
+	private String path;
+
+	/**
+	 * Generate the payload file
+	 * 
+	 * @throws IOException
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.file = File.createTempFile("payload-", ".txt");
+		this.path = this.file.getAbsolutePath();
+		byte content[] = new byte[this.size];
+		Random random = new Random(this.size);
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ('a' + random.nextInt(26));
+		}
+		FileOutputStream out = new FileOutputStream(this.file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Remove the payload file
+	 */
+	@TearDown
+	public void tearDown() {
+		ContentCache.getInstance().clear();
+		this.file.delete();
+	}
+
+	/**
+	 * Read the whole file in fresh heap buffers, as done for each request
+	 * before the content was shared
+	 * 
+	 * @return the buffers
+	 * @throws IOException
+	 */
+	@Benchmark
+	public ByteBuffer[] readPerRequest() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try {
+			FileChannel fileChannel = raf.getChannel();
+			long fileLength = fileChannel.size() + CRLF_BYTES.length;
+			int length = (int) ((fileLength + XnioUtils.WRITE_BUFFER_SIZE - 1) / XnioUtils.WRITE_BUFFER_SIZE);
+			ByteBuffer buffers[] = new ByteBuffer[length];
+			for (int i = 0; i < length - 1; i++) {
+				buffers[i] = ByteBuffer.allocate(XnioUtils.WRITE_BUFFER_SIZE);
+			}
+			buffers[length - 1] = ByteBuffer.allocate((int) (fileLength - (long) (length - 1)
+					* XnioUtils.WRITE_BUFFER_SIZE));
+			fileChannel.read(buffers);
+			buffers[length - 1].put(CRLF_BYTES);
+			return buffers;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the views of the cached payload
+	 * @throws IOException
+	 */
+	@Benchmark
+	public ByteBuffer[] contentCache() throws IOException {
+		return ContentCache.getInstance().get(this.path).getBuffers();
+	}
+
+	/**
+	 * @return the views of the mapped payload
+	 * @throws IOException
+	 */
+	@Benchmark
+	public ByteBuffer[] mappedContentStore() throws IOException {
+		return MappedContentStore.getInstance().get(this.path).getBuffers();
+	}
+
+	/**
+	 * Touch every byte of the cached payload
+	 * 
+	 * @param blackhole
+	 * @throws IOException
+	 */
+	@Benchmark
+	public void contentCacheRead(Blackhole blackhole) throws IOException {
+		consume(ContentCache.getInstance().get(this.path), blackhole);
+	}
+
+	/**
+	 * Touch every byte of the mapped payload, which includes the page faults
+	 * the views alone do not pay
+	 * 
+	 * @param blackhole
+	 * @throws IOException
+	 */
+	@Benchmark
+	public void mappedContentStoreRead(Blackhole blackhole) throws IOException {
+		consume(MappedContentStore.getInstance().get(this.path), blackhole);
+	}
+
+	/**
+	 * @param payload
+	 * @param blackhole
+	 */
+	private static void consume(Payload payload, Blackhole blackhole) {
+		for (ByteBuffer buffer : payload.getBuffers()) {
+			long sum = 0;
+			while (buffer.remaining() >= 8) {
+				sum += buffer.getLong();
+			}
+			while (buffer.hasRemaining()) {
+				sum += buffer.get();
+			}
+			blackhole.consume(sum);
+		}
+	}
+}
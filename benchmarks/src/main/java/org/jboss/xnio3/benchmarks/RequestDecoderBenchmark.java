@@ -0,0 +1,125 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.xnio3.server.RequestDecoder;
+import org.jboss.xnio3.server.XnioUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code RequestDecoderBenchmark}
+ * 
+ * The cost of decoding the requests of one read buffer. The buffer holds
+ * <i>requests</i> pipelined requests framed as configured. The split variant
+ * decodes a request received in two reads, the first part is not scanned
+ * again.
+ * 
+ * Created on Oct 17, 2026 at 9:51:27 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RequestDecoderBenchmark {
+
+	private static final byte REQUEST[] = "Hello from client, jSessionId: AbCdEfGhIjKlMnOpQrSt"
+			.getBytes();
+
+	@Param({ "DELIMITER", "LENGTH_PREFIXED" })
+	public RequestDecoder.Framing framing;
+
+	@Param({ "1", "4" })
+	public int requests;
+
+	private RequestDecoder decoder;
+	private ByteBuffer buffer;
+	private int limit;
+
+	/**
+	 * Fill the read buffer with the framed requests
+	 */
+	@Setup
+	public void setup() {
+		this.decoder = new RequestDecoder(this.framing);
+		this.buffer = ByteBuffer.allocate(XnioUtils.READ_BUFFER_SIZE);
+		byte crlf[] = XnioUtils.CRLF.getBytes();
+		for (int i = 0; i < this.requests; i++) {
+			if (this.framing == RequestDecoder.Framing.LENGTH_PREFIXED) {
+				this.buffer.putInt(REQUEST.length).put(REQUEST);
+			} else {
+				this.buffer.put(REQUEST).put(crlf);
+			}
+		}
+		this.limit = this.buffer.position();
+	}
+
+	/**
+	 * @return the total length of the decoded requests
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int decode() throws IOException {
+		this.buffer.limit(this.limit).position(0);
+		int total = 0;
+		while (this.decoder.decode(this.buffer)) {
+			total += this.decoder.getLength();
+		}
+		return total;
+	}
+
+	/**
+	 * @return the total length of the decoded requests
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int decodeSplit() throws IOException {
+		// the first read ends in the middle of the first request
+		this.buffer.limit(REQUEST.length / 2).position(0);
+		int total = 0;
+		while (this.decoder.decode(this.buffer)) {
+			total += this.decoder.getLength();
+		}
+		this.buffer.limit(this.limit);
+		while (this.decoder.decode(this.buffer)) {
+			total += this.decoder.getLength();
+		}
+		return total;
+	}
+}
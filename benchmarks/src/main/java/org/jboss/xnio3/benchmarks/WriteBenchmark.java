@@ -0,0 +1,183 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.xnio3.server.XnioUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code WriteBenchmark}
+ * 
+ * The cost of writing one response to a loopback connection with a single
+ * gathering write against one write per buffer. The response is split into
+ * chunks of <i>XnioUtils.WRITE_BUFFER_SIZE</i> bytes followed by the
+ * <i>CRLF</i> marker, as the server does. Each benchmark thread owns a
+ * connection whose peer is drained by a daemon thread.
+ * 
+ * Created on Oct 17, 2026 at 9:36:52 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WriteBenchmark {
+
+	@Param({ "32641", "131072" })
+	public int size;
+
+	@Param({ "false", "true" })
+	public boolean direct;
+
+	private ServerSocketChannel server;
+	private SocketChannel channel;
+	private SocketChannel peer;
+	private Thread drainer;
+	private ByteBuffer buffers[];
+
+	/**
+	 * Open the loopback connection and build the response buffers
+	 * 
+	 * @throws IOException
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.server = ServerSocketChannel.open();
+		this.server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		this.channel = SocketChannel.open(this.server.socket().getLocalSocketAddress());
+		this.channel.socket().setTcpNoDelay(true);
+		this.peer = this.server.accept();
+
+		final SocketChannel source = this.peer;
+		this.drainer = new Thread(new Runnable() {
+			public void run() {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+				try {
+					while (source.read(buffer) >= 0) {
+						buffer.clear();
+					}
+				} catch (IOException exp) {
+					// the connection was closed by the tear down
+				}
+			}
+		}, "write-benchmark-drainer");
+		this.drainer.setDaemon(true);
+		this.drainer.start();
+
+		byte crlf[] = XnioUtils.CRLF.getBytes();
+		int n = (this.size + XnioUtils.WRITE_BUFFER_SIZE - 1) / XnioUtils.WRITE_BUFFER_SIZE;
+		this.buffers = new ByteBuffer[n + 1];
+		for (int i = 0; i < n; i++) {
+			int length = Math.min(XnioUtils.WRITE_BUFFER_SIZE, this.size - i
+					* XnioUtils.WRITE_BUFFER_SIZE);
+			this.buffers[i] = allocate(length);
+			while (this.buffers[i].hasRemaining()) {
+				this.buffers[i].put((byte) ('a' + this.buffers[i].position() % 26));
+			}
+		}
+		this.buffers[n] = allocate(crlf.length);
+		this.buffers[n].put(crlf);
+	}
+
+	/**
+	 * Close the connection, which stops the drainer
+	 * 
+	 * @throws Exception
+	 */
+	@TearDown
+	public void tearDown() throws Exception {
+		this.channel.close();
+		this.drainer.join(1000);
+		this.peer.close();
+		this.server.close();
+	}
+
+	/**
+	 * @param length
+	 * @return a new buffer
+	 */
+	private ByteBuffer allocate(int length) {
+		return this.direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+	}
+
+	/**
+	 * Rewind the response buffers
+	 */
+	private void rewind() {
+		for (ByteBuffer buffer : this.buffers) {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long gatheringWrite() throws IOException {
+		rewind();
+		long total = 0;
+		ByteBuffer last = this.buffers[this.buffers.length - 1];
+		while (last.hasRemaining()) {
+			total += this.channel.write(this.buffers);
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long perBufferWrite() throws IOException {
+		rewind();
+		long total = 0;
+		for (ByteBuffer buffer : this.buffers) {
+			while (buffer.hasRemaining()) {
+				total += this.channel.write(buffer);
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@code Connection}
+ * 
+ * The client side of a connection of the load generator. A connection goes
+ * through the server protocol: it sends the <i>hello</i> greeting, waits for
+ * the <i>jSessionId</i> line and then sends one request at a time, each
+ * response being terminated by <i>CRLF</i>. The response content is only
+ * scanned for its terminator, it is read into the buffer shared by all the
+ * connections of the same {@link LoadThread}. When the server agreed on an
+ * encoding in the session line, the responses are framed by their length
+ * instead (see {@code ContentEncoding}) and are skipped without being
+ * scanned.
+ * 
+ * In open-loop mode the requests are scheduled at fixed times whether or not
+ * the previous response was received: the scheduled times of the requests
+ * which can't be sent yet are queued, and the latency of a request is measured
+ * from its scheduled time, which includes the time spent in the queue.
+ * 
+ * Created on Oct 17, 2026 at 10:12:36 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+final class Connection {
+
+	/**
+	 * {@code State}
+	 * 
+	 * The protocol state of a connection
+	 * 
+	 * Created on Oct 17, 2026 at 10:12:36 AM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	enum State {
+		/**
+		 * The TCP connection is not established yet
+		 */
+		CONNECTING,
+		/**
+		 * The greeting was sent, the session ID is not received yet
+		 */
+		AWAITING_SESSION,
+		/**
+		 * The connection can send requests
+		 */
+		READY,
+		/**
+		 * The connection was closed
+		 */
+		CLOSED
+	}
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private final SocketChannel channel;
+	private final ByteBuffer request;
+	private final ByteBuffer out;
+	private SelectionKey key;
+	private State state = State.CONNECTING;
+	// whether the last byte read is a CR
+	private boolean cr;
+	private final StringBuilder sessionLine = new StringBuilder();
+	// whether the responses are prefixed by their length
+	private boolean framed;
+	private int headerBytes;
+	private int remaining;
+	// the start time of the outstanding request, -1 if there is none
+	private long start = -1;
+	// the ring of the scheduled times of the requests not sent yet
+	private long scheduled[] = new long[16];
+	private int head;
+	private int size;
+
+	/**
+	 * Create a new instance of {@code Connection}
+	 * 
+	 * @param channel
+	 *            the connecting channel
+	 * @param hello
+	 *            the greeting
+	 * @param request
+	 *            the request sent on the connection, ready to be written
+	 */
+	Connection(SocketChannel channel, ByteBuffer hello, ByteBuffer request) {
+		this.channel = channel;
+		this.request = request;
+		this.out = ByteBuffer.allocate(Math.max(hello.remaining(), request.remaining()));
+		this.out.put(hello.duplicate()).flip();
+	}
+
+	/**
+	 * Complete the connection and send the greeting
+	 * 
+	 * @throws IOException
+	 */
+	void connected() throws IOException {
+		// the connection is no longer pending, even if it fails
+		this.state = State.AWAITING_SESSION;
+		this.channel.finishConnect();
+		flush();
+	}
+
+	/**
+	 * Send a request now if there is no outstanding request, else queue its
+	 * scheduled time
+	 * 
+	 * @param time
+	 *            the time (in nanoseconds) at which the request should be sent
+	 * @throws IOException
+	 */
+	void send(long time) throws IOException {
+		if (this.start >= 0) {
+			if (this.size == this.scheduled.length) {
+				long tmp[] = new long[this.size << 1];
+				for (int i = 0; i < this.size; i++) {
+					tmp[i] = this.scheduled[(this.head + i) % this.size];
+				}
+				this.scheduled = tmp;
+				this.head = 0;
+			}
+			this.scheduled[(this.head + this.size++) % this.scheduled.length] = time;
+			return;
+		}
+
+		this.start = time;
+		this.out.clear();
+		this.out.put(this.request.duplicate()).flip();
+		flush();
+	}
+
+	/**
+	 * Write the pending bytes, the write interest is kept until they are all
+	 * written
+	 * 
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		this.channel.write(this.out);
+		int ops = this.out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+				: SelectionKey.OP_READ;
+		if (this.key.interestOps() != ops) {
+			this.key.interestOps(ops);
+		}
+	}
+
+	/**
+	 * Scan the bytes read for the end of the current response
+	 * 
+	 * @param buffer
+	 *            the bytes read, in read mode
+	 * @return <tt>true</tt> if the response (or the session line) is complete
+	 * @throws IOException
+	 *             if the server sent bytes while no response is expected
+	 */
+	boolean received(ByteBuffer buffer) throws IOException {
+		if (this.state == State.AWAITING_SESSION) {
+			for (int i = buffer.position(); i < buffer.limit(); i++) {
+				this.sessionLine.append((char) buffer.get(i));
+			}
+			if (!receivedLine(buffer)) {
+				return false;
+			}
+			this.framed = this.sessionLine.indexOf("encoding:") >= 0;
+			return true;
+		}
+		return this.framed ? receivedFrame(buffer) : receivedLine(buffer);
+	}
+
+	/**
+	 * @param buffer
+	 * @return <tt>true</tt> if the length-prefixed response is complete
+	 * @throws IOException
+	 */
+	private boolean receivedFrame(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (this.headerBytes < 4) {
+				this.remaining = (this.remaining << 8) | (buffer.get() & 0xff);
+				if (++this.headerBytes == 4) {
+					// the compressed bytes are followed by CRLF
+					this.remaining += 2;
+				}
+				continue;
+			}
+			int n = Math.min(this.remaining, buffer.remaining());
+			buffer.position(buffer.position() + n);
+			this.remaining -= n;
+			if (this.remaining == 0) {
+				this.headerBytes = 0;
+				if (buffer.hasRemaining()) {
+					throw new IOException("Unexpected data after the end of the response");
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param buffer
+	 * @return <tt>true</tt> if the <i>CRLF</i> terminated response is
+	 *         complete
+	 * @throws IOException
+	 */
+	private boolean receivedLine(ByteBuffer buffer) throws IOException {
+		int limit = buffer.limit();
+		for (int i = buffer.position(); i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b == LF && this.cr) {
+				this.cr = false;
+				if (i + 1 < limit) {
+					throw new IOException("Unexpected data after the end of the response");
+				}
+				buffer.position(limit);
+				return true;
+			}
+			this.cr = b == CR;
+		}
+		buffer.position(limit);
+		return false;
+	}
+
+	/**
+	 * Complete the outstanding request and send the next queued one
+	 * 
+	 * @return the start time of the completed request
+	 * @throws IOException
+	 */
+	long completed() throws IOException {
+		long time = this.start;
+		this.start = -1;
+		if (this.size > 0) {
+			long next = this.scheduled[this.head];
+			this.head = (this.head + 1) % this.scheduled.length;
+			this.size--;
+			send(next);
+		}
+		return time;
+	}
+
+	/**
+	 * Close the connection, the outstanding and queued requests are lost
+	 */
+	void close() {
+		this.state = State.CLOSED;
+		if (this.key != null) {
+			this.key.cancel();
+		}
+		try {
+			this.channel.close();
+		} catch (IOException exp) {
+			// ignore
+		}
+	}
+
+	/**
+	 * @return the channel
+	 */
+	SocketChannel getChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * @param key
+	 *            the selection key of the channel
+	 */
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return the state
+	 */
+	State getState() {
+		return this.state;
+	}
+
+	/**
+	 * @param state
+	 *            the state to set
+	 */
+	void setState(State state) {
+		this.state = state;
+	}
+
+	/**
+	 * @return <tt>true</tt> if a request is outstanding
+	 */
+	boolean isBusy() {
+		return this.start >= 0;
+	}
+}
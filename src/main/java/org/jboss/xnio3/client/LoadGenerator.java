@@ -0,0 +1,270 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.client;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import org.jboss.xnio3.server.AsyncLogger;
+import org.jboss.xnio3.server.LatencyHistogram;
+import org.jboss.xnio3.server.RequestDecoder;
+import org.jboss.xnio3.server.XnioUtils;
+
+/**
+ * {@code LoadGenerator}
+ * 
+ * A load generator speaking the protocol of the server. For each payload, it
+ * opens <i>CONNECTIONS</i> connections spread over <i>THREADS</i> selector
+ * threads, performs the handshakes, warms the server up during <i>WARMUP</i>
+ * milliseconds and then measures the throughput and the latency percentiles
+ * during <i>DURATION</i> milliseconds. The request is the name of the
+ * payload, framed as configured by <i>org.jboss.xnio3.framing</i>. The
+ * responses are compressed by the server when an <i>ENCODING</i> is asked.
+ * 
+ * In closed-loop mode each connection sends its next request as soon as it
+ * receives a response, in open-loop mode the requests are sent at the fixed
+ * <i>RATE</i> whatever the response times and the latencies are measured from
+ * the scheduled send times.
+ * 
+ * The results are printed as a table or as JSON lines (see
+ * <i>org.jboss.xnio3.client.format</i>) and can be appended to a file (see
+ * <i>org.jboss.xnio3.client.output</i>).
+ * 
+ * Created on Oct 17, 2026 at 11:14:48 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public class LoadGenerator {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(LoadGenerator.class);
+	/**
+	 * The number of connections opened for each payload
+	 */
+	public static final int CONNECTIONS = Integer.getInteger("org.jboss.xnio3.client.connections",
+			100);
+	/**
+	 * The number of selector threads
+	 */
+	public static final int THREADS = Integer.getInteger("org.jboss.xnio3.client.threads", Runtime
+			.getRuntime().availableProcessors());
+	/**
+	 * Whether the requests are sent at a fixed rate (<i>open</i>) or each
+	 * connection waits for the previous response (<i>closed</i>)
+	 */
+	public static final boolean OPEN_LOOP = "open".equalsIgnoreCase(System.getProperty(
+			"org.jboss.xnio3.client.mode", "closed"));
+	/**
+	 * The number of requests per second sent in open-loop mode
+	 */
+	public static final int RATE = Integer.getInteger("org.jboss.xnio3.client.rate", 10000);
+	/**
+	 * The warm up duration (in milliseconds), not measured
+	 */
+	public static final long WARMUP = Long.getLong("org.jboss.xnio3.client.warmup", 2000);
+	/**
+	 * The measurement duration (in milliseconds)
+	 */
+	public static final long DURATION = Long.getLong("org.jboss.xnio3.client.duration", 10000);
+	/**
+	 * The maximum time (in milliseconds) to wait for the connections to
+	 * complete their handshake
+	 */
+	public static final long CONNECT_TIMEOUT = Long.getLong(
+			"org.jboss.xnio3.client.connectTimeout", 30000);
+	/**
+	 * The comma separated names of the requested payloads
+	 */
+	public static final String PAYLOADS[] = System.getProperty("org.jboss.xnio3.client.payloads",
+			"file.txt,file32k.txt,file64k.txt,file128k.txt").split(",");
+	/**
+	 * The output format (<i>table</i> or <i>jsonl</i>)
+	 */
+	public static final boolean JSON_OUTPUT = "jsonl".equalsIgnoreCase(System.getProperty(
+			"org.jboss.xnio3.client.format", "table"));
+	/**
+	 * The file the results are appended to as JSON lines, if any
+	 */
+	public static final String OUTPUT_FILE = System.getProperty("org.jboss.xnio3.client.output");
+	/**
+	 * The encodings asked to the server in the greeting (e.g. <i>gzip</i>),
+	 * none by default
+	 */
+	public static final String ENCODING = System.getProperty("org.jboss.xnio3.client.encoding");
+	private static final byte HELLO[] = ("Hello from client"
+			+ (ENCODING != null ? "; accept-encoding: " + ENCODING : "") + XnioUtils.CRLF)
+			.getBytes();
+
+	private final SocketAddress address;
+	private final String payload;
+
+	/**
+	 * Create a new instance of {@code LoadGenerator}
+	 * 
+	 * @param address
+	 *            the address of the server
+	 * @param payload
+	 *            the name of the requested payload
+	 */
+	public LoadGenerator(SocketAddress address, String payload) {
+		this.address = address;
+		this.payload = payload;
+	}
+
+	/**
+	 * @param args
+	 *            [host] [port]
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String host = args.length > 0 ? args[0] : "localhost";
+		int port = XnioUtils.SERVER_PORT;
+		if (args.length > 1) {
+			try {
+				port = Integer.valueOf(args[1]);
+			} catch (NumberFormatException e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		PrintStream out = System.out;
+		if (!JSON_OUTPUT) {
+			out.print(LoadResult.header());
+		}
+
+		for (String payload : PAYLOADS) {
+			LoadResult result = new LoadGenerator(address, payload.trim()).run();
+			out.print(JSON_OUTPUT ? result.toJson() + "\n" : result.toRow());
+			out.flush();
+			if (OUTPUT_FILE != null) {
+				Writer writer = new FileWriter(OUTPUT_FILE, true);
+				try {
+					writer.write(result.toJson() + "\n");
+				} finally {
+					writer.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generate the load and measure it
+	 * 
+	 * @return the result of the measurement
+	 * @throws Exception
+	 */
+	public LoadResult run() throws Exception {
+		// the open-loop rate is shared evenly by the threads
+		long interval = OPEN_LOOP ? THREADS * 1000000000L / Math.max(1, RATE) : 0;
+		ByteBuffer hello = ByteBuffer.wrap(HELLO);
+		ByteBuffer request = encode(this.payload);
+		LoadThread threads[] = new LoadThread[THREADS];
+		for (int i = 0; i < threads.length; i++) {
+			int n = CONNECTIONS / THREADS + (i < CONNECTIONS % THREADS ? 1 : 0);
+			threads[i] = new LoadThread("load-" + i, this.address, n, hello, request, interval);
+			threads[i].start();
+		}
+
+		try {
+			long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+			while (!isConnected(threads) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			int connections = 0;
+			for (LoadThread thread : threads) {
+				connections += thread.getReadyCount();
+			}
+			logger.infof("%s connections ready for %s", connections, this.payload);
+
+			// spread the scheduled times of the threads over the interval
+			long start = System.nanoTime();
+			LatencyHistogram warmup = new LatencyHistogram();
+			for (int i = 0; i < threads.length; i++) {
+				threads[i].startSending(start + i * interval / threads.length, warmup);
+			}
+			Thread.sleep(WARMUP);
+
+			LatencyHistogram histogram = new LatencyHistogram();
+			long completed = 0, bytes = 0, errors = 0;
+			for (LoadThread thread : threads) {
+				thread.setHistogram(histogram);
+				completed -= thread.getCompleted();
+				bytes -= thread.getBytes();
+				errors -= thread.getErrors();
+			}
+			long time = System.currentTimeMillis();
+			Thread.sleep(DURATION);
+			for (LoadThread thread : threads) {
+				thread.stopSending();
+				completed += thread.getCompleted();
+				bytes += thread.getBytes();
+				errors += thread.getErrors();
+			}
+			time = System.currentTimeMillis() - time;
+
+			return new LoadResult(this.payload, OPEN_LOOP ? "open" : "closed",
+					ENCODING != null ? ENCODING : "identity", connections,
+					OPEN_LOOP ? RATE : 0, time, completed, bytes, errors, histogram);
+		} finally {
+			for (LoadThread thread : threads) {
+				thread.stopSending();
+			}
+			for (LoadThread thread : threads) {
+				thread.join();
+			}
+		}
+	}
+
+	/**
+	 * @param threads
+	 * @return <tt>true</tt> if all the connections completed their handshake
+	 *         or failed
+	 */
+	private static boolean isConnected(LoadThread threads[]) {
+		for (LoadThread thread : threads) {
+			if (!thread.isConnected()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the payload
+	 * @return the request for the payload, ready to be written
+	 * @throws IOException
+	 */
+	private static ByteBuffer encode(String name) throws IOException {
+		byte bytes[] = name.getBytes("US-ASCII");
+		if (XnioUtils.FRAMING == RequestDecoder.Framing.LENGTH_PREFIXED) {
+			ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+			buffer.putInt(bytes.length).put(bytes).flip();
+			return buffer;
+		}
+		return ByteBuffer.wrap((name + XnioUtils.CRLF).getBytes("US-ASCII"));
+	}
+}
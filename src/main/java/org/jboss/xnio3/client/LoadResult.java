@@ -0,0 +1,146 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.client;
+
+import java.util.Locale;
+
+import org.jboss.xnio3.server.LatencyHistogram;
+
+/**
+ * {@code LoadResult}
+ * 
+ * The outcome of the load generated for one payload. A result is printed
+ * either as a row of a table or as a JSON object on a single line, so that
+ * the results of several runs can be appended to the same file and charted.
+ * The latencies are in microseconds.
+ * 
+ * Created on Oct 17, 2026 at 10:58:14 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+final class LoadResult {
+
+	private static final String TABLE_FORMAT = "%-14s %-6s %-8s %7s %9s %10s %8s %12s %10s %10s %10s %10s %10s%n";
+	private final String payload;
+	private final String mode;
+	private final String encoding;
+	private final int connections;
+	private final int rate;
+	private final long duration;
+	private final long requests;
+	private final long bytes;
+	private final long errors;
+	private final long p50;
+	private final long p99;
+	private final long p999;
+	private final long max;
+	private final double mean;
+
+	/**
+	 * Create a new instance of {@code LoadResult}
+	 * 
+	 * @param payload
+	 *            the name of the payload
+	 * @param mode
+	 *            <i>open</i> or <i>closed</i>
+	 * @param encoding
+	 *            the encoding asked to the server
+	 * @param connections
+	 *            the number of connections sending requests
+	 * @param rate
+	 *            the target rate (in requests per second) of the open-loop
+	 *            mode, 0 in closed-loop mode
+	 * @param duration
+	 *            the duration of the measurement in milliseconds
+	 * @param requests
+	 *            the number of responses received
+	 * @param bytes
+	 *            the number of response bytes received
+	 * @param errors
+	 *            the number of failed connections
+	 * @param histogram
+	 *            the latencies (in nanoseconds)
+	 */
+	LoadResult(String payload, String mode, String encoding, int connections, int rate,
+			long duration, long requests, long bytes, long errors, LatencyHistogram histogram) {
+		this.payload = payload;
+		this.mode = mode;
+		this.encoding = encoding;
+		this.connections = connections;
+		this.rate = rate;
+		this.duration = duration;
+		this.requests = requests;
+		this.bytes = bytes;
+		this.errors = errors;
+		this.p50 = histogram.getPercentile(50) / 1000;
+		this.p99 = histogram.getPercentile(99) / 1000;
+		this.p999 = histogram.getPercentile(99.9) / 1000;
+		this.max = histogram.getMax() / 1000;
+		this.mean = histogram.getMean() / 1000;
+	}
+
+	/**
+	 * @return the number of responses per second
+	 */
+	double getThroughput() {
+		return this.duration == 0 ? 0 : this.requests * 1000.0 / this.duration;
+	}
+
+	/**
+	 * @return the number of response megabytes per second
+	 */
+	double getBandwidth() {
+		return this.duration == 0 ? 0 : this.bytes * 1000.0 / this.duration / (1024 * 1024);
+	}
+
+	/**
+	 * @return the header of the table
+	 */
+	static String header() {
+		return String.format(Locale.ROOT, TABLE_FORMAT, "payload", "mode", "encoding", "conns", "rate",
+				"requests", "errors", "req/s", "MB/s", "p50(us)", "p99(us)", "p99.9(us)", "max(us)");
+	}
+
+	/**
+	 * @return the result as a row of the table
+	 */
+	String toRow() {
+		return String.format(Locale.ROOT, TABLE_FORMAT, this.payload, this.mode, this.encoding,
+				this.connections, this.rate, this.requests, this.errors, String.format(
+						Locale.ROOT, "%.1f", getThroughput()), String.format(Locale.ROOT, "%.1f",
+						getBandwidth()), this.p50, this.p99, this.p999, this.max);
+	}
+
+	/**
+	 * @return the result as a JSON object on a single line
+	 */
+	String toJson() {
+		return String.format(Locale.ROOT, "{\"payload\": \"%s\", \"mode\": \"%s\", "
+				+ "\"encoding\": \"%s\", \"connections\": %d, \"rate\": %d, "
+				+ "\"duration_ms\": %d, \"requests\": %d, \"bytes\": %d, \"errors\": %d, "
+				+ "\"throughput\": %.1f, \"mb_per_sec\": %.1f, \"p50_us\": %d, \"p99_us\": %d, "
+				+ "\"p999_us\": %d, \"max_us\": %d, \"mean_us\": %.1f}", this.payload, this.mode,
+				this.encoding, this.connections, this.rate, this.duration, this.requests, this.bytes,
+				this.errors, getThroughput(), getBandwidth(), this.p50, this.p99, this.p999,
+				this.max, this.mean);
+	}
+}
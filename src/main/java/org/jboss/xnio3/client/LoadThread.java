@@ -0,0 +1,398 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jboss.xnio3.server.AsyncLogger;
+import org.jboss.xnio3.server.LatencyHistogram;
+
+/**
+ * {@code LoadThread}
+ * 
+ * A selector thread driving a share of the connections of the load
+ * generator. The thread opens its connections (at most
+ * <i>MAX_PENDING_CONNECTS</i> at a time so that the accept backlog of the
+ * server does not overflow), performs the handshakes and, once started, sends
+ * the requests:
+ * <ul>
+ * <li>in closed-loop mode, a connection sends its next request as soon as it
+ * receives the previous response,</li>
+ * <li>in open-loop mode, the requests are scheduled every <i>interval</i>
+ * nanoseconds on the ready connections in turn, whether or not the responses
+ * keep up, and their latency is measured from their scheduled time so that a
+ * stalled server is not hidden by the client waiting for it (coordinated
+ * omission).</li>
+ * </ul>
+ * 
+ * The counters are written by the thread only and read by the
+ * {@link LoadGenerator} at the boundaries of the measurement.
+ * 
+ * Created on Oct 17, 2026 at 10:31:55 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+final class LoadThread extends Thread {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(LoadThread.class);
+	private static final int MAX_PENDING_CONNECTS = 64;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private final SocketAddress address;
+	private final int connectionCount;
+	private final ByteBuffer hello;
+	private final ByteBuffer request;
+	private final long interval;
+	private final Selector selector;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private final List<Connection> ready = new ArrayList<Connection>();
+	private final List<Connection> connections = new ArrayList<Connection>();
+	private int opened;
+	private int pendingConnects;
+	private int cursor;
+	private boolean sending;
+	private long nextSend;
+
+	private volatile long startTime;
+	private volatile boolean started;
+	private volatile boolean stopped;
+	private volatile LatencyHistogram histogram;
+	private volatile int readyCount;
+	private volatile long completed;
+	private volatile long bytes;
+	private volatile long errors;
+
+	/**
+	 * Create a new instance of {@code LoadThread}
+	 * 
+	 * @param name
+	 *            the name of the thread
+	 * @param address
+	 *            the address of the server
+	 * @param connectionCount
+	 *            the number of connections opened by the thread
+	 * @param hello
+	 *            the greeting
+	 * @param request
+	 *            the request
+	 * @param interval
+	 *            the delay (in nanoseconds) between two requests of the thread
+	 *            in open-loop mode, 0 for the closed-loop mode
+	 * @throws IOException
+	 *             if the selector can't be opened
+	 */
+	LoadThread(String name, SocketAddress address, int connectionCount, ByteBuffer hello,
+			ByteBuffer request, long interval) throws IOException {
+		super(name);
+		setDaemon(true);
+		this.address = address;
+		this.connectionCount = connectionCount;
+		this.hello = hello;
+		this.request = request;
+		this.interval = interval;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Start sending requests
+	 * 
+	 * @param startTime
+	 *            the time (in nanoseconds) of the first scheduled request
+	 * @param histogram
+	 *            the histogram recording the latencies
+	 */
+	void startSending(long startTime, LatencyHistogram histogram) {
+		this.histogram = histogram;
+		this.startTime = startTime;
+		this.started = true;
+		this.selector.wakeup();
+	}
+
+	/**
+	 * @param histogram
+	 *            the histogram recording the latencies from now on
+	 */
+	void setHistogram(LatencyHistogram histogram) {
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Stop sending requests and close the connections
+	 */
+	void stopSending() {
+		this.stopped = true;
+		this.selector.wakeup();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#run()
+	 */
+	public void run() {
+		try {
+			while (!this.stopped) {
+				connect();
+				long timeout = 100;
+				if (this.started && !this.sending) {
+					this.sending = true;
+					this.nextSend = this.startTime;
+					if (this.interval == 0) {
+						long now = System.nanoTime();
+						for (Connection connection : new ArrayList<Connection>(this.ready)) {
+							send(connection, now);
+						}
+					}
+				}
+				if (this.sending && this.interval > 0) {
+					timeout = schedule();
+				}
+				if (timeout > 0) {
+					this.selector.select(timeout);
+				} else {
+					this.selector.selectNow();
+				}
+				Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					handle(key);
+				}
+			}
+		} catch (IOException exp) {
+			logger.error("Load thread failure", exp);
+		} finally {
+			for (Connection connection : this.connections) {
+				connection.close();
+			}
+			try {
+				this.selector.close();
+			} catch (IOException exp) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Open connections until <i>MAX_PENDING_CONNECTS</i> are pending or all
+	 * the connections of the thread are opened
+	 */
+	private void connect() {
+		while (this.pendingConnects < MAX_PENDING_CONNECTS && this.opened < this.connectionCount) {
+			this.opened++;
+			Connection connection = null;
+			try {
+				connection = new Connection(SocketChannel.open(), this.hello, this.request);
+				this.connections.add(connection);
+				SocketChannel channel = connection.getChannel();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				connection.setKey(channel.register(this.selector, SelectionKey.OP_CONNECT,
+						connection));
+				this.pendingConnects++;
+				if (channel.connect(this.address)) {
+					finishConnect(connection);
+				}
+			} catch (IOException exp) {
+				failed(connection, exp);
+			}
+		}
+	}
+
+	/**
+	 * @param connection
+	 *            the connection just established
+	 * @throws IOException
+	 */
+	private void finishConnect(Connection connection) throws IOException {
+		this.pendingConnects--;
+		connection.connected();
+	}
+
+	/**
+	 * Schedule the requests due by now on the ready connections in turn
+	 * 
+	 * @return the number of milliseconds until the next scheduled request
+	 */
+	private long schedule() {
+		long now = System.nanoTime();
+		while (this.nextSend <= now) {
+			if (this.ready.isEmpty()) {
+				// no connection to send the requests, skip them
+				this.nextSend = now + this.interval;
+				break;
+			}
+			this.cursor = (this.cursor + 1) % this.ready.size();
+			send(this.ready.get(this.cursor), this.nextSend);
+			this.nextSend += this.interval;
+		}
+		return (this.nextSend - now) / 1000000;
+	}
+
+	/**
+	 * @param connection
+	 * @param time
+	 *            the time the request is scheduled at
+	 */
+	private void send(Connection connection, long time) {
+		try {
+			connection.send(time);
+		} catch (IOException exp) {
+			failed(connection, exp);
+		}
+	}
+
+	/**
+	 * Handle the ready operations of a connection
+	 * 
+	 * @param key
+	 */
+	private void handle(SelectionKey key) {
+		Connection connection = (Connection) key.attachment();
+		try {
+			if (!key.isValid()) {
+				return;
+			}
+			if (key.isConnectable()) {
+				finishConnect(connection);
+				return;
+			}
+			if (key.isWritable()) {
+				connection.flush();
+			}
+			if (key.isReadable()) {
+				read(connection);
+			}
+		} catch (IOException exp) {
+			failed(connection, exp);
+		}
+	}
+
+	/**
+	 * Read the available bytes of the connection
+	 * 
+	 * @param connection
+	 * @throws IOException
+	 */
+	private void read(Connection connection) throws IOException {
+		this.buffer.clear();
+		int n = connection.getChannel().read(this.buffer);
+		if (n < 0) {
+			throw new EOFException("Connection closed by the server");
+		}
+		this.buffer.flip();
+
+		if (connection.getState() == Connection.State.AWAITING_SESSION) {
+			if (connection.received(this.buffer)) {
+				connection.setState(Connection.State.READY);
+				this.ready.add(connection);
+				this.readyCount++;
+				if (this.sending && this.interval == 0) {
+					connection.send(System.nanoTime());
+				}
+			}
+			return;
+		}
+
+		if (!connection.isBusy()) {
+			throw new IOException("Unexpected data from the server");
+		}
+		this.bytes += n;
+		if (connection.received(this.buffer)) {
+			long now = System.nanoTime();
+			long start = connection.completed();
+			if (!this.stopped) {
+				this.histogram.record(now - start);
+				this.completed++;
+			}
+			if (this.interval == 0) {
+				connection.send(now);
+			}
+		}
+	}
+
+	/**
+	 * Count the failure and close the connection
+	 * 
+	 * @param connection
+	 *            the connection, <tt>null</tt> if it could not be opened
+	 * @param exp
+	 */
+	private void failed(Connection connection, IOException exp) {
+		this.errors++;
+		logger.debugf("Connection failure: %s", exp.getMessage());
+		if (connection == null || connection.getState() == Connection.State.CLOSED) {
+			return;
+		}
+		if (connection.getState() == Connection.State.CONNECTING) {
+			this.pendingConnects--;
+		} else if (connection.getState() == Connection.State.READY) {
+			this.ready.remove(connection);
+			this.readyCount--;
+		}
+		connection.close();
+	}
+
+	/**
+	 * @return <tt>true</tt> if all the connections of the thread either
+	 *         completed their handshake or failed
+	 */
+	boolean isConnected() {
+		return this.readyCount + this.errors >= this.connectionCount;
+	}
+
+	/**
+	 * @return the number of connections ready to send requests
+	 */
+	int getReadyCount() {
+		return this.readyCount;
+	}
+
+	/**
+	 * @return the number of responses received
+	 */
+	long getCompleted() {
+		return this.completed;
+	}
+
+	/**
+	 * @return the number of response bytes received
+	 */
+	long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return the number of failed connections
+	 */
+	long getErrors() {
+		return this.errors;
+	}
+}
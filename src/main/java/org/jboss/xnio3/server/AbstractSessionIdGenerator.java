@@ -0,0 +1,122 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+/**
+ * {@code AbstractSessionIdGenerator}
+ * 
+ * Base class of the generators encoding a fixed number of bytes into a
+ * compact session ID, using the URL-safe base64 alphabet without padding
+ * (4 characters per 3 bytes). The bytes and the characters are written into
+ * scratch arrays allocated once per thread: generating an ID only creates
+ * the returned {@code String}.
+ * 
+ * Created on Oct 17, 2026 at 6:41:15 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public abstract class AbstractSessionIdGenerator implements SessionIdGenerator {
+
+	private static final char ALPHABET[] = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+			.toCharArray();
+	private final int length;
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(length);
+		}
+	};
+
+	/**
+	 * Create a new instance of {@code AbstractSessionIdGenerator}
+	 * 
+	 * @param length
+	 *            the number of bytes of an ID, a multiple of 3
+	 */
+	protected AbstractSessionIdGenerator(int length) {
+		if (length <= 0 || length % 3 != 0) {
+			throw new IllegalArgumentException("The length must be a positive multiple of 3");
+		}
+		this.length = length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.SessionIdGenerator#nextId()
+	 */
+	public String nextId() {
+		Scratch s = this.scratch.get();
+		nextBytes(s.bytes);
+		return encode(s.bytes, s.chars);
+	}
+
+	/**
+	 * Fill the array with the bytes of the next ID. Called by a single thread
+	 * at a time for a given array.
+	 * 
+	 * @param bytes
+	 *            the array to fill
+	 */
+	protected abstract void nextBytes(byte bytes[]);
+
+	/**
+	 * @param bytes
+	 * @param chars
+	 * @return the base64 encoding of the bytes
+	 */
+	private static String encode(byte bytes[], char chars[]) {
+		for (int i = 0, j = 0; i < bytes.length; i += 3) {
+			int n = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+			chars[j++] = ALPHABET[n >>> 18];
+			chars[j++] = ALPHABET[(n >>> 12) & 0x3F];
+			chars[j++] = ALPHABET[(n >>> 6) & 0x3F];
+			chars[j++] = ALPHABET[n & 0x3F];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * {@code Scratch}
+	 * 
+	 * The per-thread arrays an ID is generated into
+	 * 
+	 * Created on Oct 17, 2026 at 6:41:15 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Scratch {
+
+		private final byte bytes[];
+		private final char chars[];
+
+		/**
+		 * Create a new instance of {@code Scratch}
+		 * 
+		 * @param length
+		 */
+		private Scratch(int length) {
+			this.bytes = new byte[length];
+			this.chars = new char[length / 3 * 4];
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+/**
+ * {@code AdaptiveBufferSizer}
+ * 
+ * The sizing of the buffers of a connection. The read buffer size follows the
+ * sizes actually read, in steps of the size classes of the
+ * {@link SizeClassBufferPool} bounded by <i>XnioUtils.READ_BUFFER_MIN</i>
+ * and <i>XnioUtils.READ_BUFFER_MAX</i>: it grows to the next class as soon
+ * as a read fills the buffer, and shrinks to the previous class after two
+ * consecutive reads which would have fit in it. The new size is used the next
+ * time the buffer is borrowed from the pool, or right away when a request
+ * doesn't fit in the buffer.
+ * 
+ * The socket send buffer starts at <i>XnioUtils.SEND_BUFFER_MIN</i> and grows
+ * to the size of the largest payload served by the connection (rounded to a
+ * power of two, at most <i>XnioUtils.SEND_BUFFER_MAX</i>) so that a response
+ * is written with as few writes as possible. It never shrinks: the kernel
+ * only commits the memory of the bytes actually queued.
+ * 
+ * When <i>XnioUtils.ADAPTIVE_SIZING</i> is disabled, the read buffers keep
+ * <i>XnioUtils.READ_BUFFER_SIZE</i> bytes and the send buffer its minimum
+ * size.
+ * 
+ * Created on Oct 17, 2026 at 9:36:48 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class AdaptiveBufferSizer {
+
+	private static final int READ_SIZES[] = readSizes();
+	private static final int INITIAL_INDEX = indexOf(XnioUtils.READ_BUFFER_SIZE);
+	private int index = INITIAL_INDEX;
+	private boolean decreaseNow;
+	private int sendBufferSize = XnioUtils.SEND_BUFFER_MIN;
+
+	/**
+	 * Create a new instance of {@code AdaptiveBufferSizer}
+	 */
+	public AdaptiveBufferSizer() {
+		super();
+	}
+
+	/**
+	 * @return the size classes the read buffers may take, in ascending order
+	 */
+	private static int[] readSizes() {
+		if (!XnioUtils.ADAPTIVE_SIZING) {
+			return new int[] { XnioUtils.READ_BUFFER_SIZE };
+		}
+		int sizes[] = SizeClassBufferPool.DEFAULT_SIZE_CLASSES;
+		int from = 0;
+		while (from < sizes.length - 1 && sizes[from] < XnioUtils.READ_BUFFER_MIN) {
+			from++;
+		}
+		int to = from + 1;
+		while (to < sizes.length && sizes[to] <= XnioUtils.READ_BUFFER_MAX) {
+			to++;
+		}
+		int readSizes[] = new int[to - from];
+		System.arraycopy(sizes, from, readSizes, 0, readSizes.length);
+		return readSizes;
+	}
+
+	/**
+	 * @param size
+	 * @return the index of the smallest read size holding at least
+	 *         <i>size</i> bytes, or the largest one
+	 */
+	private static int indexOf(int size) {
+		for (int i = 0; i < READ_SIZES.length; i++) {
+			if (READ_SIZES[i] >= size) {
+				return i;
+			}
+		}
+		return READ_SIZES.length - 1;
+	}
+
+	/**
+	 * @return the size of the next read buffer
+	 */
+	public int getReadSize() {
+		return READ_SIZES[this.index];
+	}
+
+	/**
+	 * @return the size of the largest read buffer, i.e. the maximum size of a
+	 *         request
+	 */
+	public static int getMaxReadSize() {
+		return READ_SIZES[READ_SIZES.length - 1];
+	}
+
+	/**
+	 * Record the bytes of a read
+	 * 
+	 * @param n
+	 *            the number of bytes read
+	 * @param filled
+	 *            <tt>true</tt> if the read filled the buffer
+	 */
+	public void recordRead(int n, boolean filled) {
+		if (filled) {
+			if (this.index < READ_SIZES.length - 1) {
+				this.index++;
+			}
+			this.decreaseNow = false;
+		} else if (this.index > 0 && n <= READ_SIZES[this.index - 1]) {
+			if (this.decreaseNow) {
+				this.index--;
+				this.decreaseNow = false;
+			} else {
+				this.decreaseNow = true;
+			}
+		} else {
+			this.decreaseNow = false;
+		}
+	}
+
+	/**
+	 * Grow the read size beyond the capacity of a full buffer
+	 * 
+	 * @param capacity
+	 *            the capacity of the full buffer
+	 * @return the new read size, or <tt>-1</tt> if the buffer can't grow
+	 */
+	public int grow(int capacity) {
+		int next = indexOf(capacity + 1);
+		if (READ_SIZES[next] <= capacity) {
+			return -1;
+		}
+		this.index = next;
+		this.decreaseNow = false;
+		return READ_SIZES[next];
+	}
+
+	/**
+	 * Choose the send buffer size for a payload
+	 * 
+	 * @param length
+	 *            the number of bytes of the payload
+	 * @return the new send buffer size, or <tt>-1</tt> if the current one
+	 *         fits
+	 */
+	public int sendBufferFor(long length) {
+		if (!XnioUtils.ADAPTIVE_SIZING || length <= this.sendBufferSize
+				|| this.sendBufferSize >= XnioUtils.SEND_BUFFER_MAX) {
+			return -1;
+		}
+		int size = Integer.highestOneBit((int) Math.min(length, XnioUtils.SEND_BUFFER_MAX));
+		if (size < length) {
+			size <<= 1;
+		}
+		this.sendBufferSize = Math.min(size, XnioUtils.SEND_BUFFER_MAX);
+		return this.sendBufferSize;
+	}
+
+	/**
+	 * @return the current send buffer size
+	 */
+	public int getSendBufferSize() {
+		return this.sendBufferSize;
+	}
+}
@@ -0,0 +1,418 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jboss.logging.Logger;
+import org.jboss.logging.Logger.Level;
+
+/**
+ * {@code AsyncLogger}
+ * 
+ * A logger which hands its messages over to a background thread, so the I/O
+ * threads never wait for the formatting of a message nor for the log
+ * handlers. The level is checked before anything is done, and the messages
+ * are neither formatted nor allocated by the calling thread: the format and
+ * the parameters are stored into preallocated events of a bounded ring
+ * shared by all the loggers, formatted and logged by the drain thread. When
+ * the ring is full the message is dropped (and counted) rather than blocking
+ * the caller.
+ * 
+ * The ring is a bounded multi-producer queue, the same algorithm as the
+ * {@link BufferPool}: a producer claims a slot with a CAS on the tail and
+ * publishes it with the sequence of the slot.
+ * 
+ * With <i>XnioUtils.LOG_ASYNC</i> set to <tt>false</tt>, the messages are
+ * logged directly by the calling thread.
+ * 
+ * Created on Oct 17, 2026 at 8:40:11 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class AsyncLogger {
+
+	private static final Sink sink = XnioUtils.LOG_ASYNC ? new Sink(XnioUtils.LOG_BUFFER_SIZE)
+			: null;
+	private final Logger logger;
+
+	/**
+	 * Create a new instance of {@code AsyncLogger}
+	 * 
+	 * @param logger
+	 *            the logger the messages are logged to
+	 */
+	private AsyncLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * @param clazz
+	 * @return a logger named after the class
+	 */
+	public static AsyncLogger getLogger(Class<?> clazz) {
+		return new AsyncLogger(Logger.getLogger(clazz.getName()));
+	}
+
+	/**
+	 * @param level
+	 * @return <tt>true</tt> if the messages of the level are logged
+	 */
+	public boolean isEnabled(Level level) {
+		return this.logger.isEnabled(level);
+	}
+
+	/**
+	 * @return <tt>true</tt> if the debug messages are logged
+	 */
+	public boolean isDebugEnabled() {
+		return this.logger.isDebugEnabled();
+	}
+
+	/**
+	 * @param format
+	 * @param param
+	 */
+	public void debugf(String format, Object param) {
+		log(Level.DEBUG, null, format, 1, param, null, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param1
+	 * @param param2
+	 */
+	public void debugf(String format, Object param1, Object param2) {
+		log(Level.DEBUG, null, format, 2, param1, param2, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param1
+	 * @param param2
+	 * @param param3
+	 */
+	public void debugf(String format, Object param1, Object param2, Object param3) {
+		log(Level.DEBUG, null, format, 3, param1, param2, param3);
+	}
+
+	/**
+	 * @param message
+	 */
+	public void info(String message) {
+		log(Level.INFO, null, message, 0, null, null, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param
+	 */
+	public void infof(String format, Object param) {
+		log(Level.INFO, null, format, 1, param, null, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param1
+	 * @param param2
+	 */
+	public void infof(String format, Object param1, Object param2) {
+		log(Level.INFO, null, format, 2, param1, param2, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param1
+	 * @param param2
+	 * @param param3
+	 */
+	public void infof(String format, Object param1, Object param2, Object param3) {
+		log(Level.INFO, null, format, 3, param1, param2, param3);
+	}
+
+	/**
+	 * @param format
+	 * @param param
+	 */
+	public void warnf(String format, Object param) {
+		log(Level.WARN, null, format, 1, param, null, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param1
+	 * @param param2
+	 */
+	public void warnf(String format, Object param1, Object param2) {
+		log(Level.WARN, null, format, 2, param1, param2, null);
+	}
+
+	/**
+	 * @param format
+	 * @param param1
+	 * @param param2
+	 * @param param3
+	 */
+	public void warnf(String format, Object param1, Object param2, Object param3) {
+		log(Level.WARN, null, format, 3, param1, param2, param3);
+	}
+
+	/**
+	 * @param message
+	 * @param t
+	 */
+	public void error(String message, Throwable t) {
+		log(Level.ERROR, t, message, 0, null, null, null);
+	}
+
+	/**
+	 * @param t
+	 * @param format
+	 * @param param
+	 */
+	public void errorf(Throwable t, String format, Object param) {
+		log(Level.ERROR, t, format, 1, param, null, null);
+	}
+
+	/**
+	 * Log the message, asynchronously if enabled
+	 * 
+	 * @param level
+	 * @param t
+	 * @param format
+	 * @param n
+	 *            the number of parameters
+	 * @param param1
+	 * @param param2
+	 * @param param3
+	 */
+	private void log(Level level, Throwable t, String format, int n, Object param1,
+			Object param2, Object param3) {
+		if (!this.logger.isEnabled(level)) {
+			return;
+		}
+		if (sink == null) {
+			write(this.logger, level, t, format, n, param1, param2, param3);
+		} else {
+			sink.offer(this.logger, level, t, format, n, param1, param2, param3);
+		}
+	}
+
+	/**
+	 * Format and log a message
+	 * 
+	 * @param logger
+	 * @param level
+	 * @param t
+	 * @param format
+	 * @param n
+	 * @param param1
+	 * @param param2
+	 * @param param3
+	 */
+	private static void write(Logger logger, Level level, Throwable t, String format, int n,
+			Object param1, Object param2, Object param3) {
+		switch (n) {
+			case 0:
+				logger.log(level, format, t);
+				break;
+			case 1:
+				logger.logf(level, t, format, param1);
+				break;
+			case 2:
+				logger.logf(level, t, format, param1, param2);
+				break;
+			default:
+				logger.logf(level, t, format, param1, param2, param3);
+		}
+	}
+
+	/**
+	 * @return the number of messages dropped because the ring was full
+	 */
+	public static long getDropped() {
+		return sink == null ? 0 : sink.dropped.get();
+	}
+
+	/**
+	 * {@code Event}
+	 * 
+	 * A preallocated slot of the ring
+	 * 
+	 * Created on Oct 17, 2026 at 8:40:11 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Event {
+
+		private Logger logger;
+		private Level level;
+		private Throwable throwable;
+		private String format;
+		private int n;
+		private Object param1;
+		private Object param2;
+		private Object param3;
+	}
+
+	/**
+	 * {@code Sink}
+	 * 
+	 * The ring of events and its drain thread
+	 * 
+	 * Created on Oct 17, 2026 at 8:40:11 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Sink implements Runnable {
+
+		private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+		private final Event events[];
+		private final AtomicLongArray sequences;
+		private final int mask;
+		private final AtomicLong tail = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		// only used by the thread draining the ring
+		private long head;
+		private long reported;
+
+		/**
+		 * Create a new instance of {@code Sink}
+		 * 
+		 * @param size
+		 *            the number of events of the ring, rounded up to a power
+		 *            of two
+		 */
+		private Sink(int size) {
+			int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+			this.events = new Event[capacity];
+			this.sequences = new AtomicLongArray(capacity);
+			for (int i = 0; i < capacity; i++) {
+				this.events[i] = new Event();
+				this.sequences.set(i, i);
+			}
+			this.mask = capacity - 1;
+
+			Thread thread = new Thread(this, "xnio3-async-logger");
+			thread.setDaemon(true);
+			thread.start();
+			// log the pending messages on exit
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					drain();
+				}
+			}, "xnio3-async-logger-shutdown"));
+		}
+
+		/**
+		 * @return <tt>true</tt> if the event was queued, <tt>false</tt> if the
+		 *         ring is full
+		 */
+		private boolean offer(Logger logger, Level level, Throwable t, String format, int n,
+				Object param1, Object param2, Object param3) {
+			long pos = this.tail.get();
+			for (;;) {
+				int index = (int) (pos & this.mask);
+				long dif = this.sequences.get(index) - pos;
+				if (dif == 0) {
+					if (this.tail.compareAndSet(pos, pos + 1)) {
+						Event e = this.events[index];
+						e.logger = logger;
+						e.level = level;
+						e.throwable = t;
+						e.format = format;
+						e.n = n;
+						e.param1 = param1;
+						e.param2 = param2;
+						e.param3 = param3;
+						this.sequences.lazySet(index, pos + 1);
+						return true;
+					}
+					pos = this.tail.get();
+				} else if (dif < 0) {
+					this.dropped.incrementAndGet();
+					return false;
+				} else {
+					pos = this.tail.get();
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			for (;;) {
+				try {
+					if (drain() == 0) {
+						LockSupport.parkNanos(IDLE_PARK_NANOS);
+					}
+				} catch (Throwable t) {
+					// never let the drain thread die
+					t.printStackTrace();
+				}
+			}
+		}
+
+		/**
+		 * Log all the published events
+		 * 
+		 * @return the number of events logged
+		 */
+		private synchronized int drain() {
+			int count = 0;
+			for (;;) {
+				int index = (int) (this.head & this.mask);
+				if (this.sequences.get(index) != this.head + 1) {
+					break;
+				}
+				Event e = this.events[index];
+				try {
+					write(e.logger, e.level, e.throwable, e.format, e.n, e.param1, e.param2,
+							e.param3);
+				} finally {
+					e.logger = null;
+					e.level = null;
+					e.throwable = null;
+					e.format = null;
+					e.param1 = e.param2 = e.param3 = null;
+					this.sequences.lazySet(index, this.head + this.events.length);
+					this.head++;
+				}
+				count++;
+			}
+
+			long n = this.dropped.get();
+			if (n != this.reported) {
+				Logger.getLogger(AsyncLogger.class.getName()).warnf(
+						"%s log messages dropped, the log ring is full", n - this.reported);
+				this.reported = n;
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamChannel;
+
+/**
+ * {@code BlockingChannelAdapter}
+ * 
+ * Blocking reads and writes over a non-blocking XNIO channel. A thread which
+ * has to wait resumes the reads (or writes) of the channel and parks with
+ * {@link LockSupport#park(Object)}; the listener of the channel, called by the
+ * I/O thread once the channel is ready, suspends them again and unparks the
+ * thread. Unlike {@code awaitReadable()}, which blocks in a per-thread
+ * selector, the waiting thread doesn't hold anything but its stack: a virtual
+ * thread is unmounted from its carrier while it waits.
+ * 
+ * The adapter sets the read, write and close listeners of the channel. A
+ * single thread may read and another one write at the same time.
+ * 
+ * Created on Oct 17, 2026 at 10:18:27 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class BlockingChannelAdapter {
+
+	private final StreamChannel channel;
+	private volatile Thread reader;
+	private volatile Thread writer;
+	private volatile boolean readable;
+	private volatile boolean writable;
+
+	/**
+	 * Create a new instance of {@code BlockingChannelAdapter}
+	 * 
+	 * @param channel
+	 *            the non-blocking channel, its reads and writes suspended
+	 */
+	public BlockingChannelAdapter(StreamChannel channel) {
+		this.channel = channel;
+		channel.getReadSetter().set(new ChannelListener<StreamChannel>() {
+			public void handleEvent(StreamChannel c) {
+				c.suspendReads();
+				readable = true;
+				unpark(reader);
+			}
+		});
+		channel.getWriteSetter().set(new ChannelListener<StreamChannel>() {
+			public void handleEvent(StreamChannel c) {
+				c.suspendWrites();
+				writable = true;
+				unpark(writer);
+			}
+		});
+		channel.getCloseSetter().set(new ChannelListener<StreamChannel>() {
+			public void handleEvent(StreamChannel c) {
+				unpark(reader);
+				unpark(writer);
+			}
+		});
+	}
+
+	/**
+	 * @param thread
+	 *            the thread to unpark, may be <tt>null</tt>
+	 */
+	private static void unpark(Thread thread) {
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Park the current thread until the channel is readable or closed
+	 * 
+	 * @throws IOException
+	 *             if the thread is interrupted
+	 */
+	public void awaitReadable() throws IOException {
+		this.reader = Thread.currentThread();
+		this.readable = false;
+		try {
+			this.channel.resumeReads();
+			while (!this.readable && this.channel.isOpen()) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					throw new InterruptedIOException();
+				}
+			}
+		} finally {
+			this.reader = null;
+		}
+	}
+
+	/**
+	 * Park the current thread until the channel is writable or closed
+	 * 
+	 * @throws IOException
+	 *             if the thread is interrupted
+	 */
+	public void awaitWritable() throws IOException {
+		this.writer = Thread.currentThread();
+		this.writable = false;
+		try {
+			this.channel.resumeWrites();
+			while (!this.writable && this.channel.isOpen()) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					throw new InterruptedIOException();
+				}
+			}
+		} finally {
+			this.writer = null;
+		}
+	}
+
+	/**
+	 * Read at least one byte, waiting for the channel to be readable
+	 * 
+	 * @param dst
+	 *            the buffer to read into, having remaining space
+	 * @return the number of bytes read, or -1 at the end of the stream
+	 * @throws IOException
+	 */
+	public int read(ByteBuffer dst) throws IOException {
+		for (;;) {
+			int n = this.channel.read(dst);
+			if (n != 0) {
+				return n;
+			}
+			awaitReadable();
+		}
+	}
+
+	/**
+	 * Write all the bytes of the buffers with gathering writes, waiting for
+	 * the channel to be writable when the socket is full
+	 * 
+	 * @param srcs
+	 *            the buffers to write
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long write(ByteBuffer[] srcs) throws IOException {
+		long total = 0;
+		int offset = 0;
+		while (offset < srcs.length) {
+			long n = this.channel.write(srcs, offset, srcs.length - offset);
+			total += n;
+			while (offset < srcs.length && !srcs[offset].hasRemaining()) {
+				offset++;
+			}
+			if (n == 0 && offset < srcs.length) {
+				awaitWritable();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Close the channel, the waiting threads are woken up
+	 */
+	public void close() {
+		IoUtils.safeClose(this.channel);
+	}
+
+	/**
+	 * @return the adapted channel
+	 */
+	public StreamChannel getChannel() {
+		return this.channel;
+	}
+}
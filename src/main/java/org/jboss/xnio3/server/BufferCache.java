@@ -0,0 +1,196 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BufferCache}
+ * 
+ * A per-thread cache of buffers in front of a shared {@link BufferPool}. Each
+ * thread (typically an XNIO read or write thread) keeps a small local stack of
+ * buffers, the <i>magazine</i>, and only touches the shared pool when its
+ * magazine is empty (refill) or full (spill). Refills and spills move half a
+ * magazine at once, so most acquire/restitute calls never leave the current
+ * thread.
+ * 
+ * A buffer may be restituted by another thread than the one which acquired
+ * it, it then simply goes to the magazine of the restituting thread.
+ * 
+ * Created on Oct 17, 2026 at 3:12:40 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class BufferCache {
+
+	/**
+	 * The default number of buffers kept by each thread
+	 */
+	public static final int DEFAULT_MAGAZINE_SIZE = 32;
+	private final BufferPool pool;
+	private final int magazineSize;
+	private final int batchSize;
+	private final ThreadLocal<Magazine> magazines = new ThreadLocal<Magazine>() {
+		@Override
+		protected Magazine initialValue() {
+			return new Magazine(magazineSize);
+		}
+	};
+
+	/**
+	 * Create a new instance of {@code BufferCache}
+	 * 
+	 * @param pool
+	 *            the shared pool
+	 * @param magazineSize
+	 *            the maximum number of buffers kept by each thread
+	 */
+	public BufferCache(BufferPool pool, int magazineSize) {
+		if (pool == null) {
+			throw new NullPointerException();
+		}
+		if (magazineSize < 2) {
+			throw new IllegalArgumentException("The magazine size must be at least 2");
+		}
+		this.pool = pool;
+		this.magazineSize = magazineSize;
+		this.batchSize = magazineSize / 2;
+	}
+
+	/**
+	 * Create a new instance of {@code BufferCache} with magazines of
+	 * <i>DEFAULT_MAGAZINE_SIZE</i> buffers
+	 * 
+	 * @param pool
+	 *            the shared pool
+	 */
+	public BufferCache(BufferPool pool) {
+		this(pool, DEFAULT_MAGAZINE_SIZE);
+	}
+
+	/**
+	 * Try to acquire a buffer without blocking
+	 * 
+	 * @return a cleared buffer, or <tt>null</tt> if the shared pool is
+	 *         exhausted
+	 */
+	public ByteBuffer tryAcquire() {
+		Magazine magazine = this.magazines.get();
+		if (magazine.size == 0) {
+			magazine.size = this.pool.tryAcquire(magazine.buffers, 0, this.batchSize);
+			if (magazine.size == 0) {
+				return null;
+			}
+		}
+		ByteBuffer buffer = magazine.buffers[--magazine.size];
+		magazine.buffers[magazine.size] = null;
+		return buffer;
+	}
+
+	/**
+	 * Acquire a buffer, waiting at most the specified time if the shared pool
+	 * is exhausted
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return a cleared buffer, or <tt>null</tt> if the timeout elapsed
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public ByteBuffer acquire(long timeout, TimeUnit unit) throws InterruptedException {
+		ByteBuffer buffer = tryAcquire();
+		return buffer != null ? buffer : this.pool.acquire(timeout, unit);
+	}
+
+	/**
+	 * Give back a buffer. The buffer is cleared.
+	 * 
+	 * @param buffer
+	 * @throws NullPointerException
+	 *             if the <i>buffer<i> is null.
+	 */
+	public void restitute(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException();
+		}
+
+		Magazine magazine = this.magazines.get();
+		if (magazine.size == this.magazineSize) {
+			// spill the oldest half of the magazine to the shared pool
+			this.pool.restitute(magazine.buffers, 0, this.batchSize);
+			System.arraycopy(magazine.buffers, this.batchSize, magazine.buffers, 0,
+					magazine.size - this.batchSize);
+			magazine.size -= this.batchSize;
+			for (int i = magazine.size; i < this.magazineSize; i++) {
+				magazine.buffers[i] = null;
+			}
+		}
+		buffer.clear();
+		magazine.buffers[magazine.size++] = buffer;
+	}
+
+	/**
+	 * Give back all the buffers cached by the current thread to the shared
+	 * pool and drop its magazine. Threads which stop using the cache should
+	 * call this method before they terminate.
+	 */
+	public void flush() {
+		Magazine magazine = this.magazines.get();
+		this.pool.restitute(magazine.buffers, 0, magazine.size);
+		magazine.size = 0;
+		this.magazines.remove();
+	}
+
+	/**
+	 * @return the shared pool
+	 */
+	public BufferPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * {@code Magazine}
+	 * 
+	 * The local stack of buffers of a thread
+	 * 
+	 * Created on Oct 17, 2026 at 3:12:40 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Magazine {
+
+		private final ByteBuffer buffers[];
+		private int size;
+
+		/**
+		 * Create a new instance of {@code Magazine}
+		 * 
+		 * @param capacity
+		 */
+		private Magazine(int capacity) {
+			this.buffers = new ByteBuffer[capacity];
+		}
+	}
+}
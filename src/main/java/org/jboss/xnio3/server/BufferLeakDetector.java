@@ -0,0 +1,232 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * {@code BufferLeakDetector}
+ * 
+ * A sampling detector of pooled buffers which are never given back to their
+ * pool. One acquisition out of <i>samplingInterval</i> is tracked: the stack
+ * of the acquiring thread is recorded along with a weak reference to the
+ * buffer. If the buffer is garbage collected before it is restituted, it can't
+ * come back to the pool anymore and the recorded stack is reported.
+ * 
+ * The detector is disabled when the sampling interval is 0, it then costs a
+ * single field read per acquire/restitute.
+ * 
+ * Created on Oct 17, 2026 at 4:48:51 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class BufferLeakDetector {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(BufferLeakDetector.class);
+	private final int samplingInterval;
+	private final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<ByteBuffer>();
+	private final ConcurrentHashMap<Object, Record> records = new ConcurrentHashMap<Object, Record>();
+	private final ThreadLocal<Probe> probes = new ThreadLocal<Probe>() {
+		@Override
+		protected Probe initialValue() {
+			return new Probe();
+		}
+	};
+	private final AtomicLong leaks = new AtomicLong();
+	// racy on purpose, it only drives the sampling
+	private int counter;
+
+	/**
+	 * Create a new instance of {@code BufferLeakDetector}
+	 * 
+	 * @param samplingInterval
+	 *            track one acquisition out of <i>samplingInterval</i>, 0
+	 *            disables the detector
+	 */
+	public BufferLeakDetector(int samplingInterval) {
+		if (samplingInterval < 0) {
+			throw new IllegalArgumentException("The sampling interval may not be negative");
+		}
+		this.samplingInterval = samplingInterval;
+	}
+
+	/**
+	 * Called when a buffer is handed out by a pool
+	 * 
+	 * @param buffer
+	 *            the acquired buffer
+	 */
+	public void acquired(ByteBuffer buffer) {
+		if (this.samplingInterval == 0) {
+			return;
+		}
+		reportLeaks();
+		if (++this.counter % this.samplingInterval == 0) {
+			Record record = new Record(buffer, this.queue);
+			this.records.put(record, record);
+		}
+	}
+
+	/**
+	 * Called when a buffer is given back to its pool
+	 * 
+	 * @param buffer
+	 *            the restituted buffer
+	 */
+	public void restituted(ByteBuffer buffer) {
+		if (this.samplingInterval == 0 || this.records.isEmpty()) {
+			return;
+		}
+		Probe probe = this.probes.get();
+		probe.buffer = buffer;
+		probe.hash = System.identityHashCode(buffer);
+		Record record = this.records.remove(probe);
+		probe.buffer = null;
+		if (record != null) {
+			// the buffer came back, it must not be reported when collected
+			record.clear();
+		}
+	}
+
+	/**
+	 * Report the tracked buffers collected without being restituted
+	 */
+	public void reportLeaks() {
+		Record record;
+		while ((record = (Record) this.queue.poll()) != null) {
+			if (this.records.remove(record) != null) {
+				this.leaks.incrementAndGet();
+				logger.error("Buffer leak: a pooled buffer was never restituted, it was acquired at",
+						record.stack);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of leaks detected so far
+	 */
+	public long getLeaks() {
+		return this.leaks.get();
+	}
+
+	/**
+	 * @return <tt>true</tt> if the detector tracks acquisitions
+	 */
+	public boolean isEnabled() {
+		return this.samplingInterval > 0;
+	}
+
+	/**
+	 * {@code Record}
+	 * 
+	 * A tracked acquisition
+	 * 
+	 * Created on Oct 17, 2026 at 4:48:51 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Record extends WeakReference<ByteBuffer> {
+
+		private final int hash;
+		private final Throwable stack;
+
+		/**
+		 * Create a new instance of {@code Record}
+		 * 
+		 * @param buffer
+		 * @param queue
+		 */
+		private Record(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+			super(buffer, queue);
+			// buffers hash their content, the records use the identity
+			this.hash = System.identityHashCode(buffer);
+			this.stack = new Throwable("Acquired by " + Thread.currentThread().getName());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof Probe) {
+				ByteBuffer buffer = get();
+				return buffer != null && buffer == ((Probe) obj).buffer;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * {@code Probe}
+	 * 
+	 * A reusable lookup key, so that restituting a buffer does not allocate
+	 * 
+	 * Created on Oct 17, 2026 at 4:48:51 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Probe {
+
+		private ByteBuffer buffer;
+		private int hash;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Record && ((Record) obj).get() == this.buffer;
+		}
+	}
+}
@@ -22,12 +22,27 @@
 package org.jboss.xnio3.server;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * {@code BufferPool}
  * 
+ * A lock-free pool of {@code ByteBuffer}s. The available buffers are kept in
+ * a bounded multi-producer/multi-consumer ring (one sequence number per slot,
+ * as described by D. Vyukov) so that neither {@link #tryAcquire()} nor
+ * {@link #restitute(ByteBuffer)} ever takes a monitor. The number of buffers
+ * created by the pool is a hard cap enforced with a CAS loop.
+ * 
+ * A pool hands out either heap buffers or direct buffers. Direct buffers are
+ * carved from large off-heap slabs (see {@link #SLAB_SIZE}) so that a socket
+ * write from a pooled buffer does not go through a temporary direct copy and
+ * the pool does not pay one native allocation per buffer.
+ * 
  * Created on Nov 15, 2011 at 9:47:22 AM
  * 
  * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
@@ -38,42 +53,105 @@ public final class BufferPool {
 	 * The default capacity is 8KB
 	 */
 	public static final int DEFAULT_CAPACITY = 8 * 1024;
-	private static final int MAX_ITEMS = 256;
-	private ConcurrentLinkedQueue<ByteBuffer> queue;
-	private int capacity;
-	private AtomicInteger counter = new AtomicInteger(0);
+	/**
+	 * The default maximum number of buffers created by a pool
+	 */
+	public static final int DEFAULT_MAX_ITEMS = 256;
+	/**
+	 * The size of the off-heap chunks the direct buffers are carved from
+	 */
+	public static final int SLAB_SIZE = 1024 * 1024;
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private final int capacity;
+	private final int maxItems;
+	private final boolean direct;
+	// the current slab and the number of buffers carved from all the slabs
+	private ByteBuffer slab;
+	private int carved;
+	private long allocatedBytes;
+	// number of buffers created by the pool
+	private final AtomicInteger created = new AtomicInteger(0);
+	// the ring of available buffers
+	private final AtomicReferenceArray<ByteBuffer> items;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
 
 	/**
 	 * Create a new instance of {@code BufferPool} with capacity equal to
 	 * <i>DEFAULT_CAPACITY</i>
 	 */
 	private BufferPool() {
-		this(DEFAULT_CAPACITY);
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_ITEMS, false);
 	}
 
 	/**
 	 * Create a new instance of {@code BufferPool} with the specified capacity
 	 * 
 	 * @param capacity
-	 *            the capacity of the pool
+	 *            the capacity of the buffers
+	 * @param maxItems
+	 *            the maximum number of buffers created by the pool
+	 * @param direct
+	 *            <tt>true</tt> to create direct buffers
 	 */
-	private BufferPool(int capacity) {
+	private BufferPool(int capacity, int maxItems, boolean direct) {
 		this.capacity = capacity;
-		this.queue = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.maxItems = maxItems;
+		this.direct = direct;
+		int size = Integer.highestOneBit(Math.max(maxItems - 1, 1)) << 1;
+		this.mask = size - 1;
+		this.items = new AtomicReferenceArray<ByteBuffer>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
 	}
 
 	/**
 	 * 
 	 * @param capacity
-	 *            the pool capacity
+	 *            the capacity of the buffers
 	 * @return a new {@code BufferPool} instance
 	 */
 	public static BufferPool create(int capacity) {
+		return create(capacity, DEFAULT_MAX_ITEMS);
+	}
+
+	/**
+	 * 
+	 * @param capacity
+	 *            the capacity of the buffers
+	 * @param maxItems
+	 *            the maximum number of buffers created by the pool
+	 * @return a new {@code BufferPool} instance
+	 */
+	public static BufferPool create(int capacity, int maxItems) {
+		return create(capacity, maxItems, false);
+	}
+
+	/**
+	 * 
+	 * @param capacity
+	 *            the capacity of the buffers
+	 * @param maxItems
+	 *            the maximum number of buffers created by the pool
+	 * @param direct
+	 *            <tt>true</tt> to create direct buffers carved from off-heap
+	 *            slabs, <tt>false</tt> to create heap buffers
+	 * @return a new {@code BufferPool} instance
+	 */
+	public static BufferPool create(int capacity, int maxItems, boolean direct) {
 		if (capacity <= 0) {
 			throw new IllegalArgumentException("The capacity may not be null or negative");
 		}
+		if (maxItems <= 0) {
+			throw new IllegalArgumentException(
+					"The maximum number of items may not be null or negative");
+		}
 
-		return new BufferPool(capacity);
+		return new BufferPool(capacity, maxItems, direct);
 	}
 
 	/**
@@ -86,33 +164,121 @@ public final class BufferPool {
 		return new BufferPool();
 	}
 
+	/**
+	 * Try to acquire a {@code ByteBuffer} without blocking. An available
+	 * buffer is returned if there is one, else a new buffer is created if the
+	 * maximum number of buffers is not reached yet.
+	 * 
+	 * @return a cleared {@code ByteBuffer}, or <tt>null</tt> if the pool is
+	 *         exhausted
+	 */
+	public ByteBuffer tryAcquire() {
+		ByteBuffer buffer = poll();
+		if (buffer != null) {
+			return buffer;
+		}
+
+		for (;;) {
+			int n = this.created.get();
+			if (n >= this.maxItems) {
+				// a buffer may have been restituted meanwhile
+				return poll();
+			}
+			if (this.created.compareAndSet(n, n + 1)) {
+				return allocate();
+			}
+		}
+	}
+
+	/**
+	 * Acquire up to <i>length</i> buffers at once without blocking. The
+	 * available buffers are taken first, a new buffer is only created if none
+	 * is available.
+	 * 
+	 * @param buffers
+	 *            the array receiving the acquired buffers
+	 * @param offset
+	 *            the index of the first buffer to set
+	 * @param length
+	 *            the maximum number of buffers to acquire
+	 * @return the number of buffers acquired
+	 */
+	public int tryAcquire(ByteBuffer[] buffers, int offset, int length) {
+		int n = 0;
+		ByteBuffer buffer;
+		while (n < length && (buffer = poll()) != null) {
+			buffers[offset + n++] = buffer;
+		}
+		if (n == 0 && length > 0 && (buffer = tryAcquire()) != null) {
+			buffers[offset + n++] = buffer;
+		}
+		return n;
+	}
+
+	/**
+	 * Acquire a {@code ByteBuffer}, waiting at most the specified time for a
+	 * buffer to become available if the pool is exhausted.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return a cleared {@code ByteBuffer}, or <tt>null</tt> if the timeout
+	 *         elapsed before a buffer became available
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public ByteBuffer acquire(long timeout, TimeUnit unit) throws InterruptedException {
+		ByteBuffer buffer = tryAcquire();
+		if (buffer != null) {
+			return buffer;
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long parkNanos = 1000;
+		for (int spins = 0;; spins++) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return null;
+			}
+			if (spins < 16) {
+				Thread.yield();
+			} else {
+				// exponential back-off, there is no monitor to wait on
+				LockSupport.parkNanos(Math.min(parkNanos, remaining));
+				parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+			}
+			if ((buffer = tryAcquire()) != null) {
+				return buffer;
+			}
+		}
+	}
+
 	/**
 	 * Peek a {@code ByteBuffer} from the {@code BufferPool}. This method return
-	 * an element from the list if there is at least one available. If the
+	 * an element from the pool if there is at least one available. If the
 	 * maximum number of elements were created and the pool is empty the current
-	 * thread blocks until at least one element becomes available. If the buffer
+	 * thread waits until at least one element becomes available. If the pool
 	 * is empty and the maximum number of elements is not reached yet, a new
 	 * element is created.
 	 * 
 	 * @return a {@code ByteBuffer} instance with default capacity
-	 * @throws Exception
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
 	 */
-	public ByteBuffer peek() throws Exception {
-		if (queue.isEmpty() && counter.get() < MAX_ITEMS) {
-			ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
-			this.queue.offer(newBuffer);
-			counter.incrementAndGet();
-		}
-
-		synchronized (queue) {
-			while (queue.isEmpty()) {
-				queue.wait();
-			}
-			return queue.poll();
+	public ByteBuffer peek() throws InterruptedException {
+		ByteBuffer buffer;
+		while ((buffer = acquire(Long.MAX_VALUE >> 1, TimeUnit.NANOSECONDS)) == null) {
+			// wait again
 		}
+		return buffer;
 	}
 
 	/**
+	 * Give back a buffer to the pool. The buffer is cleared.
 	 * 
 	 * @param buffer
 	 * @throws NullPointerException
@@ -122,56 +288,286 @@ public final class BufferPool {
 		if (buffer == null) {
 			throw new NullPointerException();
 		}
+		if (buffer.capacity() != this.capacity || buffer.isDirect() != this.direct) {
+			// not a buffer of this pool
+			return;
+		}
+
+		buffer.clear();
+		// The ring can hold all the buffers created by the pool, a full ring
+		// means that the buffer does not come from this pool: drop it
+		offer(buffer);
+	}
+
+	/**
+	 * Give back several buffers to the pool at once. The buffers are cleared
+	 * and the slots of the array are set to <tt>null</tt>.
+	 * 
+	 * @param buffers
+	 *            the array holding the buffers to restitute
+	 * @param offset
+	 *            the index of the first buffer
+	 * @param length
+	 *            the number of buffers
+	 */
+	public void restitute(ByteBuffer[] buffers, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			restitute(buffers[i]);
+			buffers[i] = null;
+		}
+	}
+
+	/**
+	 * @return the capacity of the buffers of the pool
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return the maximum number of buffers created by the pool
+	 */
+	public int getMaxItems() {
+		return this.maxItems;
+	}
+
+	/**
+	 * @return the number of buffers created by the pool
+	 */
+	public int getCreated() {
+		return this.created.get();
+	}
+
+	/**
+	 * @return an estimation of the number of buffers available in the pool
+	 */
+	public int getAvailable() {
+		return (int) Math.max(0, this.tail.get() - this.head.get());
+	}
+
+	/**
+	 * @return an estimation of the number of buffers currently handed out by
+	 *         the pool, including the buffers cached in the magazines of a
+	 *         {@link BufferCache}
+	 */
+	public int getInUse() {
+		return Math.max(0, getCreated() - getAvailable());
+	}
+
+	/**
+	 * The pool only creates a buffer when all the buffers it created are in
+	 * use, so the highest number of buffers in use at the same time is the
+	 * number of buffers created.
+	 * 
+	 * @return the highest number of buffers in use at the same time
+	 */
+	public int getHighWater() {
+		return getCreated();
+	}
+
+	/**
+	 * @return the number of bytes allocated by the pool, including the unused
+	 *         part of the current slab
+	 */
+	public synchronized long getAllocatedBytes() {
+		return this.direct ? this.allocatedBytes : (long) getCreated() * this.capacity;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the pool hands out direct buffers
+	 */
+	public boolean isDirect() {
+		return this.direct;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BufferPool[capacity=" + this.capacity + ", direct=" + this.direct
+				+ ", allocated=" + getCreated() + ", inUse=" + getInUse() + ", highWater="
+				+ getHighWater() + ", max=" + this.maxItems + "]";
+	}
+
+	/**
+	 * Create a new buffer. This is the slow path, it is called at most
+	 * <i>maxItems</i> times during the life of the pool.
+	 * 
+	 * @return a new buffer
+	 */
+	private ByteBuffer allocate() {
+		if (!this.direct) {
+			return ByteBuffer.allocate(this.capacity);
+		}
 
-		synchronized (this.queue) {
-			buffer.clear();
-			this.queue.offer(buffer);
-			this.queue.notifyAll();
+		synchronized (this) {
+			if (this.slab == null || this.slab.remaining() < this.capacity) {
+				int n = Math.max(1, Math.min(SLAB_SIZE / this.capacity, this.maxItems - this.carved));
+				this.slab = ByteBuffer.allocateDirect(n * this.capacity);
+				this.allocatedBytes += this.slab.capacity();
+			}
+			int position = this.slab.position();
+			this.slab.limit(position + this.capacity);
+			ByteBuffer buffer = this.slab.slice();
+			this.slab.limit(this.slab.capacity());
+			this.slab.position(position + this.capacity);
+			this.carved++;
+			return buffer;
+		}
+	}
+
+	/**
+	 * Add the buffer to the ring
+	 * 
+	 * @param buffer
+	 * @return <tt>false</tt> if the ring is full
+	 */
+	private boolean offer(ByteBuffer buffer) {
+		for (;;) {
+			long pos = this.tail.get();
+			int index = (int) pos & this.mask;
+			long diff = this.sequences.get(index) - pos;
+			if (diff == 0) {
+				if (this.tail.compareAndSet(pos, pos + 1)) {
+					this.items.set(index, buffer);
+					// publish the slot to the consumers
+					this.sequences.lazySet(index, pos + 1);
+					return true;
+				}
+			} else if (diff < 0 && pos - this.head.get() > this.mask) {
+				return false;
+			}
+			// else a consumer is still releasing the slot
 		}
 	}
 
 	/**
+	 * Remove a buffer from the ring
+	 * 
+	 * @return a buffer, or <tt>null</tt> if the ring is empty
+	 */
+	private ByteBuffer poll() {
+		for (;;) {
+			long pos = this.head.get();
+			int index = (int) pos & this.mask;
+			long diff = this.sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (this.head.compareAndSet(pos, pos + 1)) {
+					ByteBuffer buffer = this.items.get(index);
+					this.items.lazySet(index, null);
+					// release the slot to the producers
+					this.sequences.lazySet(index, pos + this.mask + 1);
+					return buffer;
+				}
+			} else if (diff < 0 && this.tail.get() == pos) {
+				return null;
+			}
+			// else a producer is still publishing the slot
+		}
+	}
+
+	/**
+	 * Stress test of the pool: each thread acquires buffers, checks that no
+	 * other thread holds the same buffer at the same time and gives them back.
+	 * At the end, the pool must hold exactly the buffers it created and never
+	 * more than its maximum number of buffers.
+	 * 
+	 * With the <i>cached</i> option, the buffers go through per-thread
+	 * {@link BufferCache} magazines. With the <i>direct</i> option, the pool
+	 * hands out direct buffers carved from slabs.
 	 * 
 	 * @param args
+	 *            [threads] [iterations per thread] [cached] [direct]
 	 * @throws Exception
 	 */
 	public static void main(String args[]) throws Exception {
-		final BufferPool pool = create();
-
-		Thread threads[] = new Thread[100];
-
-		final AtomicInteger counter = new AtomicInteger(0);
+		final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		boolean cachedOption = false, directOption = false;
+		for (int i = 2; i < args.length; i++) {
+			cachedOption |= "cached".equals(args[i]);
+			directOption |= "direct".equals(args[i]);
+		}
+		final boolean cached = cachedOption;
+		final BufferPool pool = create(DEFAULT_CAPACITY, cached ? 64 * 64 : 64, directOption);
+		final BufferCache cache = new BufferCache(pool);
+		final AtomicInteger errors = new AtomicInteger(0);
+		final AtomicLong timeouts = new AtomicLong(0);
+		Thread threads[] = new Thread[nThreads];
 
 		for (int i = 0; i < threads.length; i++) {
+			final long id = i + 1;
 			threads[i] = new Thread(new Runnable() {
 
 				@Override
 				public void run() {
-					long id = Thread.currentThread().getId();
-					int max = 10000;
 					try {
-						while ((max--) > 0) {
-							ByteBuffer buffer = pool.peek();
-							System.out.println("[Tread-" + id + "] -> peek buffer, max = " + max);
-							Thread.sleep(2);
-							pool.restitute(buffer);
-							System.out.println("[Tread-" + id + "] -> restitute buffer");
+						for (int n = 0; n < iterations; n++) {
+							ByteBuffer buffer;
+							if (cached) {
+								buffer = (n & 1) == 0 ? cache.tryAcquire() : cache.acquire(10,
+										TimeUnit.MILLISECONDS);
+							} else {
+								buffer = (n & 1) == 0 ? pool.tryAcquire() : pool.acquire(10,
+										TimeUnit.MILLISECONDS);
+							}
+							if (buffer == null) {
+								timeouts.incrementAndGet();
+								continue;
+							}
+							// Tag the buffer and check that nobody else changed
+							// the tag while we were holding it
+							buffer.putLong(0, id);
+							Thread.yield();
+							if (buffer.getLong(0) != id || buffer.capacity() != DEFAULT_CAPACITY) {
+								errors.incrementAndGet();
+							}
+							buffer.putLong(0, 0);
+							if (cached) {
+								cache.restitute(buffer);
+							} else {
+								pool.restitute(buffer);
+							}
 						}
-					} catch (Exception exp) {
-						exp.printStackTrace();
+					} catch (InterruptedException exp) {
+						errors.incrementAndGet();
+					} finally {
+						cache.flush();
 					}
-					counter.incrementAndGet();
-					System.out.println("[Thread-" + id + "] terminated");
 				}
 			});
 		}
 
+		long time = System.nanoTime();
 		for (int i = 0; i < threads.length; i++) {
 			threads[i].start();
 		}
 		for (int i = 0; i < threads.length; i++) {
 			threads[i].join();
 		}
-		System.out.println("Counter : " + counter.get());
+		time = System.nanoTime() - time;
+
+		long operations = (long) nThreads * iterations - timeouts.get();
+		if (pool.getCreated() > pool.getMaxItems()) {
+			errors.incrementAndGet();
+			System.out.println("Created " + pool.getCreated() + " buffers, max is "
+					+ pool.getMaxItems());
+		}
+		if (pool.getAvailable() != pool.getCreated()) {
+			errors.incrementAndGet();
+			System.out.println("Available buffers: " + pool.getAvailable() + ", created: "
+					+ pool.getCreated());
+		}
+		System.out.println(pool);
+		System.out.println("Threads: " + nThreads + ", acquire/restitute: " + operations
+				+ ", empty/timed out: " + timeouts.get() + ", created: " + pool.getCreated()
+				+ ", throughput: " + (operations * 1000000000L / Math.max(time, 1)) + " ops/s");
+		System.out.println(errors.get() == 0 ? "OK" : "FAILED: " + errors.get() + " errors");
+		if (errors.get() != 0) {
+			System.exit(1);
+		}
 	}
 }
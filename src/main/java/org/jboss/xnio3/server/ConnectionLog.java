@@ -0,0 +1,110 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code ConnectionLog}
+ * 
+ * Logs the connections and disconnections. Each connection is only logged at
+ * the debug level, the info level gets a summary of the connections accepted,
+ * closed and refused at most once per <i>XnioUtils.LOG_SUMMARY_INTERVAL</i>
+ * milliseconds, so that connection storms don't flood the log.
+ * 
+ * Created on Oct 17, 2026 at 8:40:11 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class ConnectionLog {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(ConnectionLog.class);
+	private static final AtomicLong accepted = new AtomicLong();
+	private static final AtomicLong closed = new AtomicLong();
+	private static final AtomicLong refused = new AtomicLong();
+	private static final AtomicLong nextSummary = new AtomicLong();
+
+	/**
+	 * Create a new instance of {@code ConnectionLog}
+	 */
+	private ConnectionLog() {
+		super();
+	}
+
+	/**
+	 * @param session
+	 *            the session of the new connection
+	 * @param open
+	 *            the number of opened connections
+	 */
+	public static void accepted(Session session, int open) {
+		accepted.incrementAndGet();
+		logger.debugf("New connection accepted [%s] -> total number of connections : %s", session,
+				open);
+		summarize(open);
+	}
+
+	/**
+	 * @param session
+	 *            the session of the closed connection
+	 * @param open
+	 *            the number of opened connections
+	 */
+	public static void closed(Session session, int open) {
+		closed.incrementAndGet();
+		logger.debugf(
+				"Closing remote connection for session: [%s] -> number of remaining connections %s",
+				session, open);
+		summarize(open);
+	}
+
+	/**
+	 * @param open
+	 *            the number of opened connections
+	 */
+	public static void refused(int open) {
+		refused.incrementAndGet();
+		summarize(open);
+	}
+
+	/**
+	 * Log the summary if the interval elapsed since the previous one
+	 * 
+	 * @param open
+	 */
+	private static void summarize(int open) {
+		long now = System.currentTimeMillis();
+		long next = nextSummary.get();
+		if (now < next || !nextSummary.compareAndSet(next, now + XnioUtils.LOG_SUMMARY_INTERVAL)) {
+			return;
+		}
+		long a = accepted.getAndSet(0);
+		long c = closed.getAndSet(0);
+		long r = refused.getAndSet(0);
+		if (a != 0 || c != 0) {
+			logger.infof("Connections: %s accepted, %s closed -> %s opened", a, c, open);
+		}
+		if (r != 0) {
+			logger.warnf("%s connections refused, the maximum number of sessions is reached", r);
+		}
+	}
+}
@@ -0,0 +1,550 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+
+
+/**
+ * {@code ContentCache}
+ * 
+ * A process-wide cache of response payloads. Each file is read once into a
+ * read-only direct buffer (followed by the <i>CRLF</i> end of data marker)
+ * which is shared by all connections. Connections never touch the cached
+ * buffer itself, they get {@code duplicate()} views of it through
+ * {@link Entry#getBuffers()}.
+ * 
+ * When compression is enabled (see <i>XnioUtils.COMPRESSION</i>), the
+ * encoded variants of each payload are shared the same way, see
+ * {@link Entry#getVariant(ContentEncoding)}. They are compressed once, by
+ * {@link #preload(String)} when the server starts. A file loaded later (after
+ * a change or an eviction) is read by the I/O thread but its variants are
+ * only stored (level 0) until the background encoder replaces them with the
+ * variants compressed at <i>XnioUtils.COMPRESSION_LEVEL</i>.
+ * 
+ * The cache is bounded by the total number of cached bytes and evicts the
+ * least recently used entries first. An entry is reloaded when the modification
+ * time or the length of the underlying file changes.
+ * 
+ * Created on Oct 17, 2026 at 10:05:12 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class ContentCache {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(ContentCache.class);
+	/**
+	 * The default maximum size of the cache is 64MB
+	 */
+	public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+	/**
+	 * The default delay between two checks of the file modification time
+	 */
+	public static final long DEFAULT_CHECK_INTERVAL = 1000L;
+	private static final byte CRLF_BYTES[] = XnioUtils.CRLF.getBytes();
+	private static final ContentCache INSTANCE = new ContentCache(XnioUtils.CONTENT_CACHE_MAX_SIZE,
+			DEFAULT_CHECK_INTERVAL);
+
+	private final LinkedHashMap<String, Entry> entries;
+	private final long maxSize;
+	private final long checkInterval;
+	private long size;
+	// the compression of the variants of the files loaded after the preload
+	private ExecutorService encoder;
+
+	/**
+	 * Create a new instance of {@code ContentCache}
+	 * 
+	 * @param maxSize
+	 *            the maximum number of cached bytes
+	 * @param checkInterval
+	 *            the minimum delay (in milliseconds) between two checks of the
+	 *            modification time of a cached file
+	 */
+	private ContentCache(long maxSize, long checkInterval) {
+		this.maxSize = maxSize;
+		this.checkInterval = checkInterval;
+		// access-order map -> iteration starts from the least recently used
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return the shared {@code ContentCache} instance
+	 */
+	public static ContentCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Retrieve the cached entry of the specified file, loading it from the
+	 * disk if it is not cached yet or if it was modified since it was loaded.
+	 * 
+	 * @param path
+	 *            the path of the file
+	 * @return the cached entry of the file
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public Entry get(String path) throws IOException {
+		long now = System.currentTimeMillis();
+		Entry entry;
+		synchronized (this.entries) {
+			entry = this.entries.get(path);
+		}
+
+		if (entry != null && (now - entry.lastCheck < this.checkInterval || !entry.isStale(now))) {
+			return entry;
+		}
+
+		// Load the file outside of the lock, concurrent loads of the same file
+		// are harmless since only one of them will be kept. The variants are
+		// compressed later, off the calling I/O thread.
+		Entry loaded = load(path, now, Deflater.NO_COMPRESSION);
+		Entry stored = store(entry, loaded);
+		if (stored == loaded) {
+			encodeLater(loaded);
+		}
+		return stored;
+	}
+
+	/**
+	 * Load all the regular files of the specified directory and of its
+	 * subdirectories, compressing their variants in the calling thread. The
+	 * files are keyed on {@link File#getPath()}, as they are resolved by the
+	 * {@link ContentIndex}.
+	 * 
+	 * @param directory
+	 *            the path of the directory
+	 * @throws IOException
+	 *             if the directory or a file can't be read
+	 */
+	public void preload(String directory) throws IOException {
+		File root = new File(directory);
+		if (!root.isDirectory()) {
+			throw new FileNotFoundException(directory);
+		}
+		preload(root, new HashSet<String>());
+	}
+
+	/**
+	 * @param directory
+	 * @param visited
+	 *            the canonical paths of the directories already walked
+	 * @throws IOException
+	 */
+	private void preload(File directory, Set<String> visited) throws IOException {
+		File files[] = directory.listFiles();
+		if (files == null || !visited.add(directory.getCanonicalPath())) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				preload(file, visited);
+			} else if (file.isFile()) {
+				String path = file.getPath();
+				Entry entry;
+				synchronized (this.entries) {
+					entry = this.entries.get(path);
+				}
+				store(entry, load(path, System.currentTimeMillis(), XnioUtils.COMPRESSION_LEVEL));
+			}
+		}
+	}
+
+	/**
+	 * Make the loaded entry the current one, unless an entry of the same file
+	 * version was stored meanwhile
+	 * 
+	 * @param entry
+	 *            the entry replaced by the loaded one, <tt>null</tt> if none
+	 * @param loaded
+	 *            the loaded entry
+	 * @return the current entry of the file
+	 */
+	private Entry store(Entry entry, Entry loaded) {
+		synchronized (this.entries) {
+			Entry current = this.entries.get(loaded.path);
+			if (current != null && current != entry && current.lastModified == loaded.lastModified
+					&& current.fileLength == loaded.fileLength) {
+				return current;
+			}
+			if (current != null) {
+				this.size -= current.footprint;
+			}
+			this.entries.put(loaded.path, loaded);
+			this.size += loaded.footprint;
+			evict(loaded);
+		}
+
+		return loaded;
+	}
+
+	/**
+	 * Compress the variants of the entry in the background and replace it
+	 * with the compressed entry, unless it was replaced or evicted meanwhile
+	 * 
+	 * @param entry
+	 *            an entry whose variants are only stored
+	 */
+	private void encodeLater(final Entry entry) {
+		if (XnioUtils.COMPRESSION.isEmpty()) {
+			return;
+		}
+		encoder().execute(new Runnable() {
+			public void run() {
+				try {
+					Entry encoded = new Entry(entry.path, entry.content, entry.fileLength,
+							entry.lastModified, entry.lastCheck, encode(entry.path, entry.content,
+									(int) entry.fileLength, XnioUtils.COMPRESSION_LEVEL));
+					synchronized (entries) {
+						if (entries.get(entry.path) == entry) {
+							entries.put(entry.path, encoded);
+							size += encoded.footprint - entry.footprint;
+							evict(encoded);
+						}
+					}
+				} catch (Exception e) {
+					logger.errorf(e, "Can't encode %s", entry.path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the executor compressing the variants, created on first use
+	 */
+	private synchronized ExecutorService encoder() {
+		if (this.encoder == null) {
+			this.encoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "content-encoder");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+		return this.encoder;
+	}
+
+	/**
+	 * Remove the least recently used entries until the size of the cache falls
+	 * under the maximum size. The specified entry is never evicted.
+	 * 
+	 * @param keep
+	 *            the entry to keep
+	 */
+	private void evict(Entry keep) {
+		Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+		while (this.size > this.maxSize && it.hasNext()) {
+			Entry e = it.next().getValue();
+			if (e != keep) {
+				it.remove();
+				this.size -= e.footprint;
+				logger.debugf("Evicting %s from the content cache", e.path);
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries from the cache
+	 */
+	public void clear() {
+		synchronized (this.entries) {
+			this.entries.clear();
+			this.size = 0;
+		}
+	}
+
+	/**
+	 * @return the number of bytes currently cached
+	 */
+	public long getSize() {
+		synchronized (this.entries) {
+			return this.size;
+		}
+	}
+
+	/**
+	 * Read the whole file into a direct buffer
+	 * 
+	 * @param path
+	 * @param now
+	 * @param level
+	 *            the compression level of the variants
+	 * @return a new entry
+	 * @throws IOException
+	 */
+	private static Entry load(String path, long now, int level) throws IOException {
+		File file = new File(path);
+		if (!file.isFile()) {
+			throw new FileNotFoundException(path);
+		}
+		long lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel fileChannel = raf.getChannel();
+			long fileLength = fileChannel.size();
+			if (fileLength + CRLF_BYTES.length > Integer.MAX_VALUE) {
+				throw new IOException("File too large to be cached: " + path);
+			}
+			ByteBuffer content = ByteBuffer.allocateDirect((int) fileLength + CRLF_BYTES.length);
+			// Read the whole file
+			while (content.position() < fileLength) {
+				if (fileChannel.read(content) < 0) {
+					break;
+				}
+			}
+			// Put the <i>CRLF</i> chars at the end of the buffer to mark the
+			// end of data
+			content.put(CRLF_BYTES);
+			content.flip();
+			logger.debugf("Loaded %s (%s bytes) into the content cache", path, content.remaining());
+
+			return new Entry(path, content.asReadOnlyBuffer(), fileLength, lastModified, now,
+					encode(path, content, (int) fileLength, level));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Compress the file content with each enabled encoding
+	 * 
+	 * @param path
+	 * @param content
+	 *            the content of the file followed by <i>CRLF</i>
+	 * @param fileLength
+	 * @param level
+	 *            the compression level, {@link Deflater#NO_COMPRESSION} to
+	 *            only store the content
+	 * @return the encoded variants indexed by the ordinal of their encoding,
+	 *         the slots of the disabled encodings are <tt>null</tt>
+	 * @throws IOException
+	 */
+	private static Variant[] encode(String path, ByteBuffer content, int fileLength, int level)
+			throws IOException {
+		Variant variants[] = new Variant[ContentEncoding.values().length];
+		if (XnioUtils.COMPRESSION.isEmpty()) {
+			return variants;
+		}
+		// the deflater only reads arrays
+		byte bytes[] = new byte[fileLength];
+		content.duplicate().get(bytes);
+		for (ContentEncoding encoding : XnioUtils.COMPRESSION) {
+			byte encoded[] = encoding.encode(bytes, 0, fileLength, level);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(4 + encoded.length + CRLF_BYTES.length);
+			buffer.putInt(encoded.length).put(encoded).put(CRLF_BYTES).flip();
+			variants[encoding.ordinal()] = new Variant(buffer.asReadOnlyBuffer());
+			logger.debugf("Encoded %s with %s (%s bytes)", path, encoding.getToken(),
+					encoded.length);
+		}
+		return variants;
+	}
+
+	/**
+	 * Split the content into views of at most <i>WRITE_BUFFER_SIZE</i> bytes
+	 * 
+	 * @param content
+	 * @param length
+	 * @return the views
+	 */
+	private static ByteBuffer[] split(ByteBuffer content, int length) {
+		int n = (length + XnioUtils.WRITE_BUFFER_SIZE - 1) / XnioUtils.WRITE_BUFFER_SIZE;
+		ByteBuffer buffers[] = new ByteBuffer[n];
+		for (int i = 0, offset = 0; i < n; i++, offset += XnioUtils.WRITE_BUFFER_SIZE) {
+			ByteBuffer view = content.duplicate();
+			view.position(offset);
+			view.limit(Math.min(offset + XnioUtils.WRITE_BUFFER_SIZE, length));
+			buffers[i] = view;
+		}
+		return buffers;
+	}
+
+	/**
+	 * {@code Entry}
+	 * 
+	 * An immutable cached payload
+	 * 
+	 * Created on Oct 17, 2026 at 10:05:12 AM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	public static final class Entry implements Payload {
+
+		private final String path;
+		private final ByteBuffer content;
+		private final int length;
+		private final Variant variants[];
+		// the number of cached bytes, including the variants
+		private final long footprint;
+		private final long fileLength;
+		private final long lastModified;
+		private volatile long lastCheck;
+
+		/**
+		 * Create a new instance of {@code Entry}
+		 * 
+		 * @param path
+		 * @param content
+		 * @param fileLength
+		 * @param lastModified
+		 * @param lastCheck
+		 * @param variants
+		 */
+		private Entry(String path, ByteBuffer content, long fileLength, long lastModified,
+				long lastCheck, Variant variants[]) {
+			this.path = path;
+			this.content = content;
+			this.length = content.remaining();
+			this.variants = variants;
+			long footprint = this.length;
+			for (Variant variant : variants) {
+				if (variant != null) {
+					footprint += variant.getLength();
+				}
+			}
+			this.footprint = footprint;
+			this.fileLength = fileLength;
+			this.lastModified = lastModified;
+			this.lastCheck = lastCheck;
+		}
+
+		/**
+		 * @param now
+		 * @return <tt>true</tt> if the file was modified since it was loaded
+		 */
+		private boolean isStale(long now) {
+			File file = new File(this.path);
+			this.lastCheck = now;
+			return file.lastModified() != this.lastModified || file.length() != this.fileLength;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.Payload#getBuffers()
+		 */
+		public ByteBuffer[] getBuffers() {
+			return split(this.content, this.length);
+		}
+
+		/**
+		 * @param encoding
+		 * @return the payload encoded as specified, the entry itself for
+		 *         {@link ContentEncoding#IDENTITY}
+		 * @throws IllegalArgumentException
+		 *             if the encoding is not enabled
+		 */
+		public Payload getVariant(ContentEncoding encoding) {
+			if (encoding == ContentEncoding.IDENTITY) {
+				return this;
+			}
+			Variant variant = this.variants[encoding.ordinal()];
+			if (variant == null) {
+				throw new IllegalArgumentException("Encoding not enabled: " + encoding);
+			}
+			return variant;
+		}
+
+		/**
+		 * @return a single read-only view of the whole cached content
+		 */
+		public ByteBuffer getBuffer() {
+			return this.content.duplicate();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.Payload#getLength()
+		 */
+		public long getLength() {
+			return this.length;
+		}
+
+		/**
+		 * @return the path of the cached file
+		 */
+		public String getPath() {
+			return this.path;
+		}
+	}
+
+	/**
+	 * {@code Variant}
+	 * 
+	 * An immutable encoded payload: the length of the compressed bytes on 4
+	 * bytes, the compressed bytes and <i>CRLF</i>
+	 * 
+	 * Created on Oct 17, 2026 at 1:02:48 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Variant implements Payload {
+
+		private final ByteBuffer content;
+		private final int length;
+
+		/**
+		 * Create a new instance of {@code Variant}
+		 * 
+		 * @param content
+		 */
+		private Variant(ByteBuffer content) {
+			this.content = content;
+			this.length = content.remaining();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.Payload#getBuffers()
+		 */
+		public ByteBuffer[] getBuffers() {
+			return split(this.content, this.length);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.Payload#getLength()
+		 */
+		public long getLength() {
+			return this.length;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@code ContentEncoding}
+ * 
+ * The encodings of the response payloads. A client asks for an encoding in
+ * its greeting line, e.g. <i>Hello from client; accept-encoding: gzip,
+ * deflate</i>, and the server picks the first one it supports: the session
+ * line then ends with <i>; encoding: gzip</i>. Without this exchange the
+ * payloads are sent as they are.
+ * 
+ * The encoded payloads are compressed once when they are loaded by the
+ * {@link ContentCache}. Since the compressed bytes may hold <i>CRLF</i>, an
+ * encoded response is framed as the length of the compressed bytes on 4
+ * bytes (big-endian), the compressed bytes and the <i>CRLF</i> end of data
+ * marker.
+ * 
+ * Created on Oct 17, 2026 at 1:02:48 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public enum ContentEncoding {
+
+	/**
+	 * The payload as it is
+	 */
+	IDENTITY,
+	/**
+	 * The gzip file format (RFC 1952)
+	 */
+	GZIP,
+	/**
+	 * The zlib format (RFC 1950), as for the HTTP <i>deflate</i> encoding
+	 */
+	DEFLATE;
+
+	private static final String ACCEPT_ENCODING = "accept-encoding:";
+
+	/**
+	 * @return the name of the encoding in the handshake
+	 */
+	public String getToken() {
+		return name().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Compress the content
+	 * 
+	 * @param content
+	 * @param offset
+	 * @param length
+	 * @param level
+	 *            the compression level, from 0 to 9
+	 * @return the compressed bytes
+	 * @throws IOException
+	 */
+	public byte[] encode(byte content[], int offset, int length, final int level)
+			throws IOException {
+		if (this == IDENTITY) {
+			byte bytes[] = new byte[length];
+			System.arraycopy(content, offset, bytes, 0, length);
+			return bytes;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+		Deflater deflater = null;
+		OutputStream stream;
+		if (this == DEFLATE) {
+			deflater = new Deflater(level);
+			stream = new DeflaterOutputStream(out, deflater);
+		} else {
+			stream = new GZIPOutputStream(out) {
+				{
+					this.def.setLevel(level);
+				}
+			};
+		}
+		try {
+			stream.write(content, offset, length);
+		} finally {
+			stream.close();
+			if (deflater != null) {
+				deflater.end();
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Parse an encoding name (case insensitive)
+	 * 
+	 * @param name
+	 * @return the encoding, or <tt>null</tt> if the name is unknown
+	 */
+	public static ContentEncoding parse(String name) {
+		for (ContentEncoding encoding : values()) {
+			if (encoding.getToken().equalsIgnoreCase(name.trim())) {
+				return encoding;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parse a comma separated list of encoding names, the unknown names are
+	 * ignored
+	 * 
+	 * @param names
+	 * @return the set of encodings
+	 */
+	public static EnumSet<ContentEncoding> parseAll(String names) {
+		EnumSet<ContentEncoding> encodings = EnumSet.noneOf(ContentEncoding.class);
+		for (String name : names.split(",")) {
+			ContentEncoding encoding = parse(name);
+			if (encoding != null && encoding != IDENTITY) {
+				encodings.add(encoding);
+			}
+		}
+		return encodings;
+	}
+
+	/**
+	 * Pick the encoding of a session from the greeting of the client
+	 * 
+	 * @param hello
+	 *            the greeting line
+	 * @param supported
+	 *            the encodings enabled on the server
+	 * @return the first encoding asked by the client which is supported,
+	 *         {@link #IDENTITY} if there is none
+	 */
+	public static ContentEncoding negotiate(String hello, EnumSet<ContentEncoding> supported) {
+		int index = hello.toLowerCase(Locale.ENGLISH).indexOf(ACCEPT_ENCODING);
+		if (index < 0 || supported.isEmpty()) {
+			return IDENTITY;
+		}
+		String list = hello.substring(index + ACCEPT_ENCODING.length());
+		int end = list.indexOf(';');
+		for (String name : (end < 0 ? list : list.substring(0, end)).split(",")) {
+			ContentEncoding encoding = parse(name);
+			if (encoding != null && (encoding == IDENTITY || supported.contains(encoding))) {
+				return encoding;
+			}
+		}
+		return IDENTITY;
+	}
+}
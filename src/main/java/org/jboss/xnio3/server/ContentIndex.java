@@ -0,0 +1,264 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code ContentIndex}
+ * 
+ * An immutable index of the resources of the content directory, built once
+ * at startup. A resource is named by its path relative to the directory, with
+ * <i>/</i> separators (e.g. <i>file32k.txt</i>, <i>docs/index.txt</i>).
+ * 
+ * The index is a compact open-addressing hash table (linear probing, load
+ * factor at most 1/2) from the UTF-8 bytes of the names to the paths of the
+ * files. The names are stored back to back in a single byte array, so a
+ * request is resolved straight from the read buffer: no {@code String} nor
+ * any other object is created by a lookup. The paths returned are the same
+ * {@code String} instances for all the requests, which makes them cheap keys
+ * for the {@link ContentCache}, the {@link MappedContentStore} and the
+ * {@link FileTransfer}.
+ * 
+ * Created on Oct 17, 2026 at 12:20:37 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class ContentIndex {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(ContentIndex.class);
+	private static final int FNV_OFFSET = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
+	private static volatile ContentIndex instance = new ContentIndex(new ArrayList<String>(),
+			new ArrayList<String>());
+
+	// the names, back to back, and the offset of each name (plus the end)
+	private final byte names[];
+	private final int offsets[];
+	private final int hashes[];
+	private final String paths[];
+	// the index + 1 of the entry of each slot, 0 for an empty slot
+	private final int slots[];
+	private final int mask;
+
+	/**
+	 * Create a new instance of {@code ContentIndex}
+	 * 
+	 * @param names
+	 *            the names of the resources
+	 * @param paths
+	 *            the paths of the files, in the order of the names
+	 */
+	private ContentIndex(List<String> names, List<String> paths) {
+		int n = names.size();
+		byte bytes[][] = new byte[n][];
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			bytes[i] = utf8(names.get(i));
+			total += bytes[i].length;
+		}
+		this.names = new byte[total];
+		this.offsets = new int[n + 1];
+		this.hashes = new int[n];
+		this.paths = paths.toArray(new String[n]);
+		this.slots = new int[Math.max(16, Integer.highestOneBit(Math.max(1, n) * 4 - 1))];
+		this.mask = this.slots.length - 1;
+
+		for (int i = 0, offset = 0; i < n; i++) {
+			System.arraycopy(bytes[i], 0, this.names, offset, bytes[i].length);
+			this.offsets[i] = offset;
+			offset += bytes[i].length;
+			this.offsets[i + 1] = offset;
+			this.hashes[i] = hash(bytes[i], 0, bytes[i].length);
+			int slot = this.hashes[i] & this.mask;
+			while (this.slots[slot] != 0) {
+				slot = (slot + 1) & this.mask;
+			}
+			this.slots[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * Index all the regular files of the directory and of its subdirectories
+	 * and make the new index the current one
+	 * 
+	 * @param directory
+	 *            the content directory
+	 * @return the new index
+	 * @throws IOException
+	 *             if the directory can't be read
+	 */
+	public static ContentIndex load(String directory) throws IOException {
+		File root = new File(directory);
+		if (!root.isDirectory()) {
+			throw new FileNotFoundException(directory);
+		}
+		List<String> names = new ArrayList<String>();
+		List<String> paths = new ArrayList<String>();
+		scan(root, "", names, paths, new HashSet<String>());
+		ContentIndex index = new ContentIndex(names, paths);
+		logger.infof("Indexed %s resources of %s", names.size(), directory);
+		instance = index;
+		return index;
+	}
+
+	/**
+	 * @return the current index, empty until {@link #load(String)} is called
+	 */
+	public static ContentIndex getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @param directory
+	 * @param prefix
+	 *            the name of the directory relative to the content directory
+	 * @param names
+	 * @param paths
+	 * @param visited
+	 *            the canonical paths of the directories already scanned
+	 * @throws IOException
+	 */
+	private static void scan(File directory, String prefix, List<String> names,
+			List<String> paths, Set<String> visited) throws IOException {
+		File files[] = directory.listFiles();
+		if (files == null || !visited.add(directory.getCanonicalPath())) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				scan(file, prefix + file.getName() + '/', names, paths, visited);
+			} else if (file.isFile()) {
+				names.add(prefix + file.getName());
+				paths.add(file.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Resolve the resource named by the bytes <i>[start, end)</i> of the
+	 * buffer, a leading <i>/</i> being ignored. The buffer is only read with
+	 * absolute gets, its position is not modified.
+	 * 
+	 * @param buffer
+	 * @param start
+	 *            the index of the first byte of the name
+	 * @param end
+	 *            the index following the last byte of the name
+	 * @return the path of the file, or <tt>null</tt> if there is no such
+	 *         resource
+	 */
+	public String lookup(ByteBuffer buffer, int start, int end) {
+		if (start < end && buffer.get(start) == '/') {
+			start++;
+		}
+		int length = end - start;
+		int h = FNV_OFFSET;
+		for (int i = start; i < end; i++) {
+			h = (h ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+		}
+		h = mix(h);
+
+		for (int slot = h & this.mask;; slot = (slot + 1) & this.mask) {
+			int entry = this.slots[slot] - 1;
+			if (entry < 0) {
+				return null;
+			}
+			if (this.hashes[entry] == h && matches(entry, buffer, start, length)) {
+				return this.paths[entry];
+			}
+		}
+	}
+
+	/**
+	 * @param entry
+	 * @param buffer
+	 * @param start
+	 * @param length
+	 * @return <tt>true</tt> if the name of the entry is the specified bytes
+	 */
+	private boolean matches(int entry, ByteBuffer buffer, int start, int length) {
+		int offset = this.offsets[entry];
+		if (this.offsets[entry + 1] - offset != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (this.names[offset + i] != buffer.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of indexed resources
+	 */
+	public int size() {
+		return this.paths.length;
+	}
+
+	/**
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return the FNV-1a hash of the bytes, mixed
+	 */
+	private static int hash(byte bytes[], int offset, int length) {
+		int h = FNV_OFFSET;
+		for (int i = offset; i < offset + length; i++) {
+			h = (h ^ (bytes[i] & 0xff)) * FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Spread the bits of the hash over the low bits used by the table
+	 * 
+	 * @param h
+	 * @return the mixed hash
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	/**
+	 * @param name
+	 * @return the UTF-8 bytes of the name
+	 */
+	private static byte[] utf8(String name) {
+		try {
+			return name.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
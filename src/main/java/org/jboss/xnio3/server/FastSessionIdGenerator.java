@@ -0,0 +1,145 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code FastSessionIdGenerator}
+ * 
+ * The default session ID generator, built for connection bursts: no lock and
+ * no shared state are involved once a thread generated its first ID. An ID
+ * is made of 15 bytes (20 characters):
+ * <ul>
+ * <li>a random node prefix (4 bytes) drawn once per generator, telling apart
+ * the IDs of different servers,</li>
+ * <li>the slot of the generating thread (3 bytes), assigned the first time
+ * the thread generates an ID,</li>
+ * <li>a per-thread counter started from a random seed and scrambled with a
+ * bijective mixing function (8 bytes), as done by
+ * {@code java.util.SplittableRandom}.</li>
+ * </ul>
+ * The IDs are unique as long as less than 2<sup>24</sup> threads generate
+ * IDs, but they are not unpredictable: use the
+ * {@link SecureSessionIdGenerator} when the session ID must not be guessed.
+ * 
+ * Created on Oct 17, 2026 at 6:41:15 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public class FastSessionIdGenerator extends AbstractSessionIdGenerator {
+
+	private static final int ID_LENGTH = 15;
+	private static final long GAMMA = 0x9e3779b97f4a7c15L;
+	private final int node;
+	private final AtomicInteger slots = new AtomicInteger();
+	private final SecureRandom seeds = new SecureRandom();
+	private final ThreadLocal<Sequence> sequence = new ThreadLocal<Sequence>() {
+		@Override
+		protected Sequence initialValue() {
+			long seed;
+			synchronized (seeds) {
+				seed = seeds.nextLong();
+			}
+			return new Sequence(slots.getAndIncrement(), seed);
+		}
+	};
+
+	/**
+	 * Create a new instance of {@code FastSessionIdGenerator}
+	 */
+	public FastSessionIdGenerator() {
+		super(ID_LENGTH);
+		this.node = this.seeds.nextInt();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.jboss.xnio3.server.AbstractSessionIdGenerator#nextBytes(byte[])
+	 */
+	@Override
+	protected void nextBytes(byte[] bytes) {
+		Sequence s = this.sequence.get();
+		long value = mix64(s.seed + GAMMA * s.counter++);
+		putInt(bytes, 0, this.node);
+		bytes[4] = (byte) (s.slot >>> 16);
+		bytes[5] = (byte) (s.slot >>> 8);
+		bytes[6] = (byte) s.slot;
+		putInt(bytes, 7, (int) (value >>> 32));
+		putInt(bytes, 11, (int) value);
+	}
+
+	/**
+	 * @param bytes
+	 * @param offset
+	 * @param value
+	 */
+	private static void putInt(byte bytes[], int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * The finalizer of the 64-bit MurmurHash3 (variant 13 of David Stafford),
+	 * a bijection scattering consecutive values.
+	 * 
+	 * @param z
+	 * @return the mixed value
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * {@code Sequence}
+	 * 
+	 * The per-thread state of the generator
+	 * 
+	 * Created on Oct 17, 2026 at 6:41:15 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class Sequence {
+
+		private final int slot;
+		private final long seed;
+		private long counter;
+
+		/**
+		 * Create a new instance of {@code Sequence}
+		 * 
+		 * @param slot
+		 * @param seed
+		 */
+		private Sequence(int slot, long seed) {
+			this.slot = slot;
+			this.seed = seed;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+
+/**
+ * {@code FileTransfer}
+ * 
+ * The state of a zero-copy file response. The file content is sent with
+ * {@link StreamSinkChannel#transferFrom(FileChannel, long, long)} (i.e.
+ * {@code FileChannel.transferTo}) and followed by the <i>CRLF</i> end of data
+ * marker. The transfer position is kept between two calls to
+ * {@link #transfer(StreamSinkChannel)} so that a partial transfer can be
+ * resumed on the next write-ready event.
+ * 
+ * The file channels are opened once and shared by all the transfers, the
+ * transfers only use positional operations on them.
+ * 
+ * Created on Oct 17, 2026 at 11:24:08 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class FileTransfer {
+
+	private static final ByteBuffer CRLF_BUFFER = ByteBuffer.wrap(XnioUtils.CRLF.getBytes())
+			.asReadOnlyBuffer();
+	private static final ConcurrentHashMap<String, SharedFile> files = new ConcurrentHashMap<String, SharedFile>();
+
+	private final SharedFile file;
+	private final FileChannel fileChannel;
+	private final long count;
+	private final ByteBuffer trailer;
+	private long position;
+	private boolean released;
+
+	/**
+	 * Create a new instance of {@code FileTransfer}
+	 * 
+	 * @param file
+	 *            the shared file to transfer
+	 */
+	private FileTransfer(SharedFile file) {
+		this.file = file;
+		this.fileChannel = file.channel;
+		this.count = file.length;
+		this.trailer = CRLF_BUFFER.duplicate();
+	}
+
+	/**
+	 * Create a new transfer of the whole specified file
+	 * 
+	 * @param path
+	 *            the path of the file
+	 * @return a new {@code FileTransfer}
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public static FileTransfer create(String path) throws IOException {
+		long now = System.currentTimeMillis();
+		for (;;) {
+			SharedFile file = files.get(path);
+			if (file != null && !file.isStale(now)) {
+				if (file.acquire()) {
+					return new FileTransfer(file);
+				}
+				// the file was retired meanwhile
+				continue;
+			}
+
+			SharedFile newFile = SharedFile.open(path, now);
+			if (file == null ? files.putIfAbsent(path, newFile) == null : files.replace(path, file,
+					newFile)) {
+				if (file != null) {
+					file.retire();
+				}
+			} else {
+				// another thread won the race
+				newFile.retire();
+			}
+		}
+	}
+
+	/**
+	 * Transfer as many bytes as possible to the channel without blocking.
+	 * 
+	 * @param channel
+	 *            the destination channel
+	 * @return <tt>true</tt> if the whole response was sent, else
+	 *         <tt>false</tt>
+	 * @throws IOException
+	 */
+	public boolean transfer(StreamSinkChannel channel) throws IOException {
+		while (this.position < this.count) {
+			long n = channel.transferFrom(this.fileChannel, this.position, this.count
+					- this.position);
+			if (n <= 0) {
+				return false;
+			}
+			this.position += n;
+		}
+
+		while (this.trailer.hasRemaining()) {
+			if (channel.write(this.trailer) <= 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Release the shared file. This method must be called once the transfer
+	 * completed or was aborted, calling it more than once has no effect.
+	 */
+	public synchronized void release() {
+		if (!this.released) {
+			this.released = true;
+			this.file.release();
+		}
+	}
+
+	/**
+	 * @return <tt>true</tt> if the whole response was sent
+	 */
+	public boolean isDone() {
+		return this.position >= this.count && !this.trailer.hasRemaining();
+	}
+
+	/**
+	 * @return the number of bytes of the response already sent
+	 */
+	public long getTransferred() {
+		return this.position + this.trailer.position();
+	}
+
+	/**
+	 * @return the total number of bytes of the response, including the
+	 *         trailing <i>CRLF</i>
+	 */
+	public long getLength() {
+		return this.count + CRLF_BUFFER.capacity();
+	}
+
+	/**
+	 * {@code SharedFile}
+	 * 
+	 * An opened file shared by all the transfers. When the file changes on the
+	 * disk, a new channel is opened and the old one is retired: it is closed
+	 * as soon as the last transfer using it is released.
+	 * 
+	 * Created on Oct 17, 2026 at 11:24:08 AM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class SharedFile {
+
+		private final File file;
+		private final FileChannel channel;
+		private final long length;
+		private final long lastModified;
+		private volatile long lastCheck;
+		// number of transfers using the file, plus one while it is not retired
+		private final AtomicInteger refs = new AtomicInteger(1);
+
+		/**
+		 * Create a new instance of {@code SharedFile}
+		 * 
+		 * @param file
+		 * @param channel
+		 * @param length
+		 * @param lastModified
+		 * @param lastCheck
+		 */
+		private SharedFile(File file, FileChannel channel, long length, long lastModified,
+				long lastCheck) {
+			this.file = file;
+			this.channel = channel;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.lastCheck = lastCheck;
+		}
+
+		/**
+		 * @param path
+		 * @param now
+		 * @return a new opened file
+		 * @throws IOException
+		 */
+		private static SharedFile open(String path, long now) throws IOException {
+			File file = new File(path);
+			if (!file.isFile()) {
+				throw new FileNotFoundException(path);
+			}
+			long lastModified = file.lastModified();
+			FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+			return new SharedFile(file, channel, channel.size(), lastModified, now);
+		}
+
+		/**
+		 * @return <tt>true</tt> if the file was acquired, <tt>false</tt> if
+		 *         it is already closed
+		 */
+		private boolean acquire() {
+			for (;;) {
+				int n = this.refs.get();
+				if (n == 0) {
+					return false;
+				}
+				if (this.refs.compareAndSet(n, n + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Release a reference, closing the channel when it was the last one
+		 */
+		private void release() {
+			if (this.refs.decrementAndGet() == 0) {
+				IoUtils.safeClose(this.channel);
+			}
+		}
+
+		/**
+		 * Drop the reference held while the file is the current one
+		 */
+		private void retire() {
+			release();
+		}
+
+		/**
+		 * @param now
+		 * @return <tt>true</tt> if the file changed since it was opened
+		 */
+		private boolean isStale(long now) {
+			if (now - this.lastCheck < ContentCache.DEFAULT_CHECK_INTERVAL) {
+				return false;
+			}
+			this.lastCheck = now;
+			return this.file.lastModified() != this.lastModified
+					|| this.file.length() != this.length;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code IoThreadLoad}
+ * 
+ * The load of an XNIO I/O thread: the number of connections whose reads are
+ * handled by the thread and the number of connections the thread accepted
+ * when it is one of the acceptors (see <i>XnioUtils.ACCEPT_THREADS</i>). Each
+ * I/O thread has its own instance (see {@link #get(Object)}), the XNIO worker
+ * threads being both the {@code Thread} running the listeners and the
+ * {@code XnioExecutor} returned by the channels.
+ * 
+ * XNIO 3.0 assigns the accepted channels to its I/O threads itself, the load
+ * is tracked to expose the balance of the threads in the metrics.
+ * 
+ * Created on Oct 17, 2026 at 11:48:21 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class IoThreadLoad {
+
+	private static final ConcurrentHashMap<Object, IoThreadLoad> loads = new ConcurrentHashMap<Object, IoThreadLoad>();
+
+	private final String name;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicLong accepts = new AtomicLong();
+
+	/**
+	 * Create a new instance of {@code IoThreadLoad}
+	 * 
+	 * @param name
+	 *            the name of the thread
+	 */
+	private IoThreadLoad(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @param thread
+	 *            the I/O thread, either as a {@code Thread} or as an
+	 *            {@code XnioExecutor}
+	 * @return the load of the thread
+	 */
+	public static IoThreadLoad get(Object thread) {
+		IoThreadLoad load = loads.get(thread);
+		if (load == null) {
+			String name = thread instanceof Thread ? ((Thread) thread).getName() : String
+					.valueOf(thread);
+			IoThreadLoad newLoad = new IoThreadLoad(name);
+			load = loads.putIfAbsent(thread, newLoad);
+			if (load == null) {
+				load = newLoad;
+			}
+		}
+		return load;
+	}
+
+	/**
+	 * Count a connection accepted by the current thread
+	 */
+	public static void accepted() {
+		get(Thread.currentThread()).accepts.incrementAndGet();
+	}
+
+	/**
+	 * Count a new connection handled by the thread
+	 */
+	public void opened() {
+		this.connections.incrementAndGet();
+	}
+
+	/**
+	 * Count a closed connection handled by the thread
+	 */
+	public void closed() {
+		this.connections.decrementAndGet();
+	}
+
+	/**
+	 * @return the number of open connections handled by the thread
+	 */
+	public int getConnections() {
+		return this.connections.get();
+	}
+
+	/**
+	 * @return the number of connections accepted by the thread
+	 */
+	public long getAccepts() {
+		return this.accepts.get();
+	}
+
+	/**
+	 * @return the load of all the I/O threads, one
+	 *         <i>name=connections/accepts</i> entry per thread ordered by name
+	 */
+	public static String summary() {
+		TreeMap<String, IoThreadLoad> sorted = new TreeMap<String, IoThreadLoad>();
+		for (IoThreadLoad load : loads.values()) {
+			sorted.put(load.name, load);
+		}
+		StringBuilder sb = new StringBuilder(32 * sorted.size());
+		for (Map.Entry<String, IoThreadLoad> e : sorted.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(e.getKey()).append('=').append(e.getValue().getConnections()).append('/')
+					.append(e.getValue().getAccepts());
+		}
+		return sb.toString();
+	}
+}
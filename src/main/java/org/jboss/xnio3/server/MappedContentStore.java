@@ -0,0 +1,294 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * {@code MappedContentStore}
+ * 
+ * A store of response payloads backed by memory-mapped files. The content of
+ * the files is never copied to the heap: each file is mapped once, sliced into
+ * views of <i>XnioUtils.WRITE_BUFFER_SIZE</i> bytes and shared by all
+ * connections. Files smaller than the mapping threshold are cheaper to keep in
+ * a heap buffer and are not mapped.
+ * 
+ * A file is remapped when its modification time or its length changes. The
+ * previous mapping is released by the garbage collector once the last
+ * response using it is sent.
+ * 
+ * The served files must be replaced atomically (written to a temporary file
+ * renamed over the served one), never modified in place: the pages of a file
+ * truncated while it is mapped can't be read anymore, and a response reading
+ * them faults (<i>SIGBUS</i>, reported as an {@code InternalError}) before
+ * the change is even detected.
+ * 
+ * Created on Oct 17, 2026 at 1:45:02 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class MappedContentStore {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(MappedContentStore.class);
+	/**
+	 * Files smaller than this threshold are loaded into heap buffers
+	 */
+	public static final int DEFAULT_MAPPING_THRESHOLD = XnioUtils.WRITE_BUFFER_SIZE;
+	/**
+	 * The maximum number of bytes mapped by a single region
+	 */
+	private static final int MAX_REGION_SIZE = 1024 * 1024 * 1024;
+	private static final ByteBuffer CRLF_BUFFER = ByteBuffer.wrap(XnioUtils.CRLF.getBytes())
+			.asReadOnlyBuffer();
+	private static final MappedContentStore INSTANCE = new MappedContentStore(
+			XnioUtils.MAPPING_THRESHOLD);
+
+	private final ConcurrentHashMap<String, MappedPayload> payloads = new ConcurrentHashMap<String, MappedPayload>();
+	private final int threshold;
+
+	/**
+	 * Create a new instance of {@code MappedContentStore}
+	 * 
+	 * @param threshold
+	 *            the minimum size of a file to be mapped
+	 */
+	private MappedContentStore(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return the shared {@code MappedContentStore} instance
+	 */
+	public static MappedContentStore getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Map all the regular files of the specified directory and of its
+	 * subdirectories. The files are keyed on {@link File#getPath()}, as they
+	 * are resolved by the {@link ContentIndex}.
+	 * 
+	 * @param directory
+	 *            the path of the directory
+	 * @throws IOException
+	 *             if the directory can't be read
+	 */
+	public void preload(String directory) throws IOException {
+		File root = new File(directory);
+		if (!root.isDirectory()) {
+			throw new FileNotFoundException(directory);
+		}
+		preload(root, new HashSet<String>());
+	}
+
+	/**
+	 * @param directory
+	 * @param visited
+	 *            the canonical paths of the directories already walked
+	 * @throws IOException
+	 */
+	private void preload(File directory, Set<String> visited) throws IOException {
+		File files[] = directory.listFiles();
+		if (files == null || !visited.add(directory.getCanonicalPath())) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				preload(file, visited);
+			} else if (file.isFile()) {
+				get(file.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Retrieve the payload of the specified file, mapping it if it is not
+	 * mapped yet or if it was modified since it was mapped.
+	 * 
+	 * @param path
+	 *            the path of the file
+	 * @return the payload of the file
+	 * @throws IOException
+	 *             if the file can't be mapped
+	 */
+	public Payload get(String path) throws IOException {
+		long now = System.currentTimeMillis();
+		MappedPayload payload = this.payloads.get(path);
+		if (payload != null && !payload.isStale(now)) {
+			return payload;
+		}
+
+		MappedPayload newPayload = map(path, now);
+		if (payload == null) {
+			MappedPayload current = this.payloads.putIfAbsent(path, newPayload);
+			return current == null ? newPayload : current;
+		}
+		this.payloads.replace(path, payload, newPayload);
+		return newPayload;
+	}
+
+	/**
+	 * Map the file and slice it into write-sized views
+	 * 
+	 * @param path
+	 * @param now
+	 * @return a new payload
+	 * @throws IOException
+	 */
+	private MappedPayload map(String path, long now) throws IOException {
+		File file = new File(path);
+		if (!file.isFile()) {
+			throw new FileNotFoundException(path);
+		}
+		long lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel fileChannel = raf.getChannel();
+			long length = fileChannel.size();
+			int n = (int) ((length + XnioUtils.WRITE_BUFFER_SIZE - 1) / XnioUtils.WRITE_BUFFER_SIZE);
+			ByteBuffer slices[] = new ByteBuffer[n + 1];
+
+			if (length < this.threshold) {
+				ByteBuffer content = ByteBuffer.allocate((int) length);
+				while (content.hasRemaining() && fileChannel.read(content) >= 0) {
+					// read the whole file
+				}
+				content.flip();
+				slice(content.asReadOnlyBuffer(), slices, 0);
+			} else {
+				// The mapping remains valid after the file channel is closed
+				int index = 0;
+				for (long offset = 0; offset < length; offset += MAX_REGION_SIZE) {
+					long size = Math.min(MAX_REGION_SIZE, length - offset);
+					ByteBuffer region = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+					index = slice(region, slices, index);
+				}
+				logger.debugf("Mapped %s (%s bytes)", path, length);
+			}
+			// The end of data marker
+			slices[n] = CRLF_BUFFER;
+
+			return new MappedPayload(file, slices, length, lastModified, now);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Slice the region into views of at most <i>WRITE_BUFFER_SIZE</i> bytes
+	 * 
+	 * @param region
+	 * @param slices
+	 * @param index
+	 *            the index of the first slice to set
+	 * @return the index following the last slice set
+	 */
+	private static int slice(ByteBuffer region, ByteBuffer[] slices, int index) {
+		int length = region.remaining();
+		for (int offset = 0; offset < length; offset += XnioUtils.WRITE_BUFFER_SIZE) {
+			region.limit(Math.min(offset + XnioUtils.WRITE_BUFFER_SIZE, length));
+			region.position(offset);
+			slices[index++] = region.slice();
+		}
+		return index;
+	}
+
+	/**
+	 * {@code MappedPayload}
+	 * 
+	 * The immutable slices of a mapped file
+	 * 
+	 * Created on Oct 17, 2026 at 1:45:02 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static final class MappedPayload implements Payload {
+
+		private final File file;
+		private final ByteBuffer slices[];
+		private final long fileLength;
+		private final long lastModified;
+		private volatile long lastCheck;
+
+		/**
+		 * Create a new instance of {@code MappedPayload}
+		 * 
+		 * @param file
+		 * @param slices
+		 * @param fileLength
+		 * @param lastModified
+		 * @param lastCheck
+		 */
+		private MappedPayload(File file, ByteBuffer slices[], long fileLength, long lastModified,
+				long lastCheck) {
+			this.file = file;
+			this.slices = slices;
+			this.fileLength = fileLength;
+			this.lastModified = lastModified;
+			this.lastCheck = lastCheck;
+		}
+
+		/**
+		 * @param now
+		 * @return <tt>true</tt> if the file was modified since it was mapped
+		 */
+		private boolean isStale(long now) {
+			if (now - this.lastCheck < ContentCache.DEFAULT_CHECK_INTERVAL) {
+				return false;
+			}
+			this.lastCheck = now;
+			return this.file.lastModified() != this.lastModified
+					|| this.file.length() != this.fileLength;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.Payload#getBuffers()
+		 */
+		public ByteBuffer[] getBuffers() {
+			ByteBuffer buffers[] = new ByteBuffer[this.slices.length];
+			for (int i = 0; i < buffers.length; i++) {
+				buffers[i] = this.slices[i].duplicate();
+			}
+			return buffers;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.Payload#getLength()
+		 */
+		public long getLength() {
+			return this.fileLength + CRLF_BUFFER.capacity();
+		}
+	}
+}
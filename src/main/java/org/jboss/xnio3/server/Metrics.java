@@ -0,0 +1,415 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+/**
+ * {@code Metrics}
+ * 
+ * The metrics of the server: striped counters for the traffic and the
+ * connections, a histogram of the request latencies (from the reception of a
+ * request to the end of its response) and gauges of the buffer pools. The
+ * recording methods never allocate nor lock.
+ * 
+ * The metrics are exposed as the <i>org.jboss.xnio3:type=Metrics</i> MBean
+ * and can be dumped to the log every <i>XnioUtils.METRICS_DUMP_INTERVAL</i>
+ * milliseconds.
+ * 
+ * Created on Oct 17, 2026 at 9:05:33 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class Metrics implements MetricsMBean {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(Metrics.class);
+	/**
+	 * The name of the MBean
+	 */
+	public static final String OBJECT_NAME = "org.jboss.xnio3:type=Metrics";
+	private static final Metrics INSTANCE = new Metrics();
+
+	private final StripedCounter bytesIn = new StripedCounter();
+	private final StripedCounter bytesOut = new StripedCounter();
+	private final StripedCounter requests = new StripedCounter();
+	private final StripedCounter responses = new StripedCounter();
+	private final StripedCounter accepts = new StripedCounter();
+	private final StripedCounter closes = new StripedCounter();
+	private final StripedCounter errors = new StripedCounter();
+	private final StripedCounter outbound = new StripedCounter();
+	private final StripedCounter sslHandshakes = new StripedCounter();
+	private final StripedCounter sslResumptions = new StripedCounter();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private ScheduledExecutorService dumper;
+
+	/**
+	 * Create a new instance of {@code Metrics}
+	 */
+	private Metrics() {
+		super();
+	}
+
+	/**
+	 * @return the metrics of the server
+	 */
+	public static Metrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Register the MBean and start the periodic dump, as configured
+	 * 
+	 * @throws Exception
+	 *             if the MBean can't be registered
+	 */
+	public synchronized void start() throws Exception {
+		if (XnioUtils.METRICS_JMX) {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			}
+		}
+		if (XnioUtils.METRICS_DUMP_INTERVAL > 0 && this.dumper == null) {
+			this.dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "metrics-dump");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.dumper.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					logger.info(dump());
+				}
+			}, XnioUtils.METRICS_DUMP_INTERVAL, XnioUtils.METRICS_DUMP_INTERVAL,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @param n
+	 *            the number of bytes read
+	 */
+	public void bytesRead(long n) {
+		this.bytesIn.add(n);
+	}
+
+	/**
+	 * @param n
+	 *            the number of bytes written
+	 */
+	public void bytesWritten(long n) {
+		this.bytesOut.add(n);
+	}
+
+	/**
+	 * @param n
+	 *            the number of response bytes queued
+	 */
+	public void outboundQueued(long n) {
+		this.outbound.add(n);
+	}
+
+	/**
+	 * @param n
+	 *            the number of queued bytes sent or dropped
+	 */
+	public void outboundReleased(long n) {
+		this.outbound.add(-n);
+	}
+
+	/**
+	 * Count a new request
+	 */
+	public void requestReceived() {
+		this.requests.increment();
+	}
+
+	/**
+	 * Count a complete response
+	 * 
+	 * @param start
+	 *            the {@code System.nanoTime()} at which the request was
+	 *            received
+	 */
+	public void responseSent(long start) {
+		this.responses.increment();
+		this.latency.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Count an accepted connection
+	 */
+	public void connectionAccepted() {
+		this.accepts.increment();
+	}
+
+	/**
+	 * Count a closed connection
+	 */
+	public void connectionClosed() {
+		this.closes.increment();
+	}
+
+	/**
+	 * Count an error
+	 */
+	public void error() {
+		this.errors.increment();
+	}
+
+	/**
+	 * Count a completed TLS handshake
+	 * 
+	 * @param resumed
+	 *            <tt>true</tt> if the session was resumed from the cache
+	 */
+	public void sslHandshake(boolean resumed) {
+		this.sslHandshakes.increment();
+		if (resumed) {
+			this.sslResumptions.increment();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getBytesIn()
+	 */
+	public long getBytesIn() {
+		return this.bytesIn.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getBytesOut()
+	 */
+	public long getBytesOut() {
+		return this.bytesOut.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getRequests()
+	 */
+	public long getRequests() {
+		return this.requests.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getResponses()
+	 */
+	public long getResponses() {
+		return this.responses.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getAccepts()
+	 */
+	public long getAccepts() {
+		return this.accepts.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getCloses()
+	 */
+	public long getCloses() {
+		return this.closes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getErrors()
+	 */
+	public long getErrors() {
+		return this.errors.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getOpenConnections()
+	 */
+	public int getOpenConnections() {
+		return SessionRegistry.getInstance().getSize();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getLatencyMean()
+	 */
+	public double getLatencyMean() {
+		return this.latency.getMean() / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getLatencyP50()
+	 */
+	public long getLatencyP50() {
+		return this.latency.getPercentile(50) / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getLatencyP99()
+	 */
+	public long getLatencyP99() {
+		return this.latency.getPercentile(99) / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getLatencyP999()
+	 */
+	public long getLatencyP999() {
+		return this.latency.getPercentile(99.9) / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getLatencyMax()
+	 */
+	public long getLatencyMax() {
+		return this.latency.getMax() / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getPoolInUse()
+	 */
+	public long getPoolInUse() {
+		long n = 0;
+		for (BufferPool pool : SizeClassBufferPool.getDefault().getPools()) {
+			n += pool.getInUse();
+		}
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getPoolHighWater()
+	 */
+	public long getPoolHighWater() {
+		long n = 0;
+		for (BufferPool pool : SizeClassBufferPool.getDefault().getPools()) {
+			n += pool.getHighWater();
+		}
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getPoolAllocatedBytes()
+	 */
+	public long getPoolAllocatedBytes() {
+		return SizeClassBufferPool.getDefault().getAllocatedBytes();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getOutboundBytes()
+	 */
+	public long getOutboundBytes() {
+		return this.outbound.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getSslHandshakes()
+	 */
+	public long getSslHandshakes() {
+		return this.sslHandshakes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getSslResumptions()
+	 */
+	public long getSslResumptions() {
+		return this.sslResumptions.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#getIoThreadLoad()
+	 */
+	public String getIoThreadLoad() {
+		return IoThreadLoad.summary();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.jboss.xnio3.server.MetricsMBean#dump()
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder(512);
+		sb.append("Metrics: connections[open=").append(getOpenConnections());
+		sb.append(", accepts=").append(getAccepts());
+		sb.append(", closes=").append(getCloses());
+		sb.append(", errors=").append(getErrors());
+		sb.append("] traffic[requests=").append(getRequests());
+		sb.append(", responses=").append(getResponses());
+		sb.append(", bytesIn=").append(getBytesIn());
+		sb.append(", bytesOut=").append(getBytesOut());
+		sb.append(", outbound=").append(getOutboundBytes());
+		sb.append("] latency(us)[mean=").append((long) getLatencyMean());
+		sb.append(", p50=").append(getLatencyP50());
+		sb.append(", p99=").append(getLatencyP99());
+		sb.append(", p99.9=").append(getLatencyP999());
+		sb.append(", max=").append(getLatencyMax());
+		sb.append("] ssl[handshakes=").append(getSslHandshakes());
+		sb.append(", resumed=").append(getSslResumptions());
+		sb.append("] threads(connections/accepts)[").append(getIoThreadLoad());
+		sb.append("] pools[").append(SizeClassBufferPool.getDefault());
+		sb.append(']');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+/**
+ * {@code MetricsMBean}
+ * 
+ * The JMX view of the {@link Metrics} of the server. The latencies are
+ * expressed in microseconds.
+ * 
+ * Created on Oct 17, 2026 at 9:05:33 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public interface MetricsMBean {
+
+	/**
+	 * @return the number of bytes read from the clients
+	 */
+	long getBytesIn();
+
+	/**
+	 * @return the number of bytes written to the clients
+	 */
+	long getBytesOut();
+
+	/**
+	 * @return the number of requests received
+	 */
+	long getRequests();
+
+	/**
+	 * @return the number of responses completely sent
+	 */
+	long getResponses();
+
+	/**
+	 * @return the number of accepted connections
+	 */
+	long getAccepts();
+
+	/**
+	 * @return the number of closed connections
+	 */
+	long getCloses();
+
+	/**
+	 * @return the number of I/O errors and refused connections
+	 */
+	long getErrors();
+
+	/**
+	 * @return the number of opened connections
+	 */
+	int getOpenConnections();
+
+	/**
+	 * @return the mean time between the reception of a request and the end
+	 *         of its response
+	 */
+	double getLatencyMean();
+
+	/**
+	 * @return the median request latency
+	 */
+	long getLatencyP50();
+
+	/**
+	 * @return the 99th percentile of the request latency
+	 */
+	long getLatencyP99();
+
+	/**
+	 * @return the 99.9th percentile of the request latency
+	 */
+	long getLatencyP999();
+
+	/**
+	 * @return the highest request latency
+	 */
+	long getLatencyMax();
+
+	/**
+	 * @return the number of pooled buffers not in the shared rings of the
+	 *         pools: the buffers in use and the buffers cached in the
+	 *         magazines of the threads
+	 */
+	long getPoolInUse();
+
+	/**
+	 * @return the highest number of pooled buffers ever created
+	 */
+	long getPoolHighWater();
+
+	/**
+	 * @return the number of bytes allocated by the buffer pools
+	 */
+	long getPoolAllocatedBytes();
+
+	/**
+	 * @return the number of response bytes queued by all the connections and
+	 *         not sent yet
+	 */
+	long getOutboundBytes();
+
+	/**
+	 * @return the number of completed TLS handshakes
+	 */
+	long getSslHandshakes();
+
+	/**
+	 * @return the number of TLS handshakes which resumed a cached session
+	 */
+	long getSslResumptions();
+
+	/**
+	 * @return the number of open connections and of accepted connections of
+	 *         each I/O thread
+	 */
+	String getIoThreadLoad();
+
+	/**
+	 * @return a text dump of all the metrics
+	 */
+	String dump();
+}
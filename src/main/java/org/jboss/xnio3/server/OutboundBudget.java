@@ -0,0 +1,143 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xnio.channels.StreamChannel;
+
+/**
+ * {@code OutboundBudget}
+ * 
+ * The number of response bytes queued by all the connections and not sent
+ * yet, bounded by a global budget. Once the budget is exhausted, the
+ * connections stop reading requests: they wait in the queue of the budget
+ * and their writes are woken up when the queued bytes drop below three
+ * quarters of the budget, their write listener then resumes the reads.
+ * 
+ * Created on Oct 17, 2026 at 8:12:47 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class OutboundBudget {
+
+	private static final OutboundBudget INSTANCE = new OutboundBudget(
+			XnioUtils.OUTBOUND_BUDGET);
+
+	private final long limit;
+	private final long resumeLimit;
+	private final AtomicLong used = new AtomicLong();
+	private final ConcurrentLinkedQueue<StreamChannel> waiters = new ConcurrentLinkedQueue<StreamChannel>();
+
+	/**
+	 * Create a new instance of {@code OutboundBudget}
+	 * 
+	 * @param limit
+	 *            the maximum number of queued bytes, 0 for no limit
+	 */
+	public OutboundBudget(long limit) {
+		this.limit = limit;
+		this.resumeLimit = limit - limit / 4;
+	}
+
+	/**
+	 * @return the shared {@code OutboundBudget} instance
+	 */
+	public static OutboundBudget getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Account for newly queued bytes
+	 * 
+	 * @param n
+	 *            the number of bytes
+	 */
+	public void reserve(long n) {
+		if (this.limit > 0) {
+			this.used.addAndGet(n);
+		}
+	}
+
+	/**
+	 * Account for sent (or dropped) bytes, waking up the waiting connections
+	 * when enough bytes were released.
+	 * 
+	 * @param n
+	 *            the number of bytes
+	 */
+	public void release(long n) {
+		if (this.limit > 0 && this.used.addAndGet(-n) <= this.resumeLimit
+				&& !this.waiters.isEmpty()) {
+			wakeup();
+		}
+	}
+
+	/**
+	 * @return <tt>true</tt> if no more bytes should be queued
+	 */
+	public boolean isExhausted() {
+		return this.limit > 0 && this.used.get() >= this.limit;
+	}
+
+	/**
+	 * Wait for the budget: the writes of the channel are woken up once enough
+	 * bytes are released.
+	 * 
+	 * @param channel
+	 *            the channel waiting for the budget
+	 */
+	public void await(StreamChannel channel) {
+		this.waiters.add(channel);
+		// the bytes may have been released meanwhile
+		if (this.used.get() <= this.resumeLimit) {
+			wakeup();
+		}
+	}
+
+	/**
+	 * Wake up the writes of all the waiting channels
+	 */
+	private void wakeup() {
+		StreamChannel channel;
+		while ((channel = this.waiters.poll()) != null) {
+			if (channel.isOpen()) {
+				channel.wakeupWrites();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of queued bytes
+	 */
+	public long getUsed() {
+		return this.used.get();
+	}
+
+	/**
+	 * @return the maximum number of queued bytes, 0 for no limit
+	 */
+	public long getLimit() {
+		return this.limit;
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@code Payload}
+ * 
+ * A response content shared by all connections
+ * 
+ * Created on Oct 17, 2026 at 1:42:30 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public interface Payload {
+
+	/**
+	 * Create new views of the payload, split into chunks of at most
+	 * <i>XnioUtils.WRITE_BUFFER_SIZE</i> bytes. The returned buffers share the
+	 * payload content and are ready to be written.
+	 * 
+	 * @return an array of read-only views of the payload
+	 */
+	ByteBuffer[] getBuffers();
+
+	/**
+	 * @return the number of bytes of the payload, including the trailing
+	 *         <i>CRLF</i>
+	 */
+	long getLength();
+}
@@ -21,37 +21,60 @@
  */
 package org.jboss.xnio3.server;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
 
-import org.jboss.logging.Logger;
 import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.Options;
 import org.xnio.channels.StreamChannel;
 
 /**
  * {@code ReadChannelListener}
  * 
+ * The read side of a connection. A new connection first goes through the
+ * session handshake: the listener waits for the greeting line of the client
+ * ({@link SessionState#AWAITING_HELLO}), queues the <i>jSessionId</i> reply
+ * and holds the reads until it is sent ({@link SessionState#SENDING_SESSION}).
+ * The requests are only handled once the connection is
+ * {@link SessionState#READY}. The handshake is never blocking, and a
+ * connection which doesn't complete it within
+ * <i>XnioUtils.HANDSHAKE_TIMEOUT</i> is closed. Once ready, a connection
+ * without any activity for <i>XnioUtils.READ_TIMEOUT</i> while no response
+ * is pending is closed as well. Both timeouts share a single
+ * {@link TimerWheel.Timeout} on the wheel of the read thread.
+ * 
  * Created on Nov 22, 2011 at 4:44:01 PM
  * 
  * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
  */
 public class ReadChannelListener implements ChannelListener<StreamChannel> {
 
-	private static final Logger logger = Logger.getLogger(ChannelListener.class.getName());
-	private String sessionId;
+	private static final AsyncLogger logger = AsyncLogger.getLogger(ReadChannelListener.class);
+	private Session session;
+	private WriteChannelListener writeListener;
 	private ByteBuffer readBuffer;
+	private final AdaptiveBufferSizer sizer = new AdaptiveBufferSizer();
+	private final RequestDecoder decoder = new RequestDecoder(XnioUtils.FRAMING,
+			AdaptiveBufferSizer.getMaxReadSize());
+	// the greeting is a line whatever the framing of the requests
+	private final RequestDecoder helloDecoder = new RequestDecoder(
+			RequestDecoder.Framing.DELIMITER, AdaptiveBufferSizer.getMaxReadSize());
+	private SessionState state = SessionState.AWAITING_HELLO;
+	private final Metrics metrics = Metrics.getInstance();
+	// the System.nanoTime() at which the current request was received
+	private long requestStart;
+	private TimerWheel wheel;
+	private TimerWheel.Timeout timeout;
 	private ByteBuffer writeBuffers[];
-	private ByteBuffer writeBuffer;
 	private long fileLength;
 
 	/**
 	 * Create a new instance of {@code ReadChannelListener}
 	 */
 	public ReadChannelListener() {
-		this.readBuffer = ByteBuffer.allocate(512);
+		super();
 	}
 
 	/*
@@ -60,131 +83,435 @@ public class ReadChannelListener implements ChannelListener<StreamChannel> {
 	 * @see org.xnio.ChannelListener#handleEvent(java.nio.channels.Channel )
 	 */
 	public void handleEvent(StreamChannel channel) {
+		// The channel is closed once the listener is unlocked, the close
+		// listener locks the write listener
+		if (!handleReads(channel)) {
+			IoUtils.safeClose(channel);
+		}
+	}
+
+	/**
+	 * Read and handle the pending requests
+	 * 
+	 * @param channel
+	 * @return <tt>false</tt> if the connection was closed by the client or
+	 *         failed, and the channel must be closed
+	 */
+	private synchronized boolean handleReads(StreamChannel channel) {
+		session.touch();
+		// The read buffer is only borrowed from the pool while data is in
+		// flight, idle connections don't hold any buffer
+		if (readBuffer == null) {
+			readBuffer = SizeClassBufferPool.getDefault().acquire(sizer.getReadSize());
+		}
 		try {
-			int nBytes = channel.read(readBuffer);
+			SslConnection ssl = session.getSsl();
+			int free = readBuffer.remaining();
+			int nBytes = ssl == null ? channel.read(readBuffer) : ssl.read(channel, readBuffer);
+			if (nBytes > 0) {
+				metrics.bytesRead(nBytes);
+				sizer.recordRead(nBytes, nBytes == free);
+			}
 			if (nBytes < 0) {
 				// means that the connection was closed remotely
-				channel.close();
-				return;
+				releaseBuffer();
+				return false;
 			}
 
-			if (nBytes > 0) {
-				readBuffer.flip();
-				byte bytes[] = new byte[nBytes];
-				readBuffer.get(bytes);
-				readBuffer.clear();
-				writeResponse(channel);
+			// The buffer may still hold complete requests from a previous read
+			// when the listener is woken up after responses were sent
+			readBuffer.flip();
+			if (state == SessionState.READY || handshake(channel)) {
+				for (;;) {
+					if (writeListener.isFull()) {
+						// try to make room for the next response
+						writeListener.flush(channel);
+						if (writeListener.isFull()) {
+							break;
+						}
+					}
+					if (!decoder.decode(readBuffer)) {
+						break;
+					}
+					metrics.requestReceived();
+					requestStart = System.nanoTime();
+					writeResponse(channel, resolve());
+					if (!XnioUtils.PIPELINING) {
+						// send each response as soon as it is ready
+						writeListener.flush(channel);
+					}
+				}
+				if (XnioUtils.PIPELINING) {
+					// send all the responses with a single gathering write
+					writeListener.flush(channel);
+				}
+				// The requests which could not be handled stay in the read
+				// buffer until the pending responses drain
+				writeListener.afterRead(channel, isBuffered());
 			}
+			if (ssl != null && ssl.isBuffered() && channel.isReadResumed()) {
+				// the bytes already unwrapped don't make the socket readable
+				channel.wakeupReads();
+			}
+			readBuffer.compact();
+			if (!readBuffer.hasRemaining()) {
+				// an incomplete request fills the buffer
+				growReadBuffer();
+			}
+		} catch (IOException e) {
+			logger.errorf(e, "Exception: %s", e.getMessage());
+			metrics.error();
+			releaseBuffer();
+			return false;
 		} catch (Exception e) {
-			logger.error("Exception: " + e.getMessage(), e);
-			// e.printStackTrace();
+			// the read buffer is left in an unknown state
+			logger.errorf(e, "Exception: %s", e.getMessage());
+			metrics.error();
+			releaseBuffer();
+			return false;
+		} finally {
+			if (readBuffer != null && readBuffer.position() == 0) {
+				releaseBuffer();
+			}
 		}
+		return true;
 	}
 
 	/**
+	 * Start the session handshake of a new connection: arm the handshake
+	 * timeout and wait for the greeting of the client.
 	 * 
 	 * @param channel
-	 * @throws Exception
+	 *            the new channel
 	 */
-	void writeResponse(StreamChannel channel) throws Exception {
-		try {
-			if (this.writeBuffers == null) {
-				initWriteBuffers();
-				// initWriteBuffer();
+	public synchronized void startHandshake(final StreamChannel channel) {
+		this.wheel = TimerWheel.get(channel.getReadThread());
+		this.timeout = new TimerWheel.Timeout() {
+			@Override
+			protected void expire() {
+				timedOut(channel);
+			}
+		};
+		this.wheel.schedule(this.timeout, XnioUtils.HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+		channel.resumeReads();
+	}
+
+	/**
+	 * Move the handshake forward with the bytes of the read buffer.
+	 * 
+	 * @param channel
+	 * @return <tt>true</tt> if the connection is ready to handle requests
+	 * @throws IOException
+	 */
+	private boolean handshake(StreamChannel channel) throws IOException {
+		if (state == SessionState.AWAITING_HELLO) {
+			if (!helloDecoder.decode(readBuffer)) {
+				return false;
+			}
+			byte bytes[] = new byte[helloDecoder.getLength()];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = readBuffer.get(helloDecoder.getStart() + i);
+			}
+			String hello = new String(bytes);
+			logger.debugf("[%s] %s", session, hello.trim());
+			// The client may ask for precompressed responses
+			session.setEncoding(ContentEncoding.negotiate(hello, XnioUtils.COMPRESSION));
+			String response = "jSessionId: " + session.getId();
+			if (session.getEncoding() != ContentEncoding.IDENTITY) {
+				response += "; encoding: " + session.getEncoding().getToken();
 			}
+			response += XnioUtils.CRLF;
+			writeListener.enqueue(new ByteBuffer[] { ByteBuffer.wrap(response.getBytes()) });
+			state = SessionState.SENDING_SESSION;
+		}
 
-			// Write the file content to the channel
-			write(channel, writeBuffers, fileLength);
-			// write(channel, writeBuffer);
-		} catch (Exception exp) {
-			logger.error("Exception: " + exp.getMessage(), exp);
-			// exp.printStackTrace();
+		if (!writeListener.flush(channel)) {
+			// The requests sent meanwhile are handled once the reply is sent
+			writeListener.holdReads(channel, isBuffered());
+			return false;
+		}
+		state = SessionState.READY;
+		if (XnioUtils.READ_TIMEOUT > 0) {
+			wheel.schedule(timeout, XnioUtils.READ_TIMEOUT, TimeUnit.MILLISECONDS);
+		} else {
+			wheel.cancel(timeout);
 		}
+		return true;
 	}
 
 	/**
+	 * Close the connection if the handshake is not complete or if the
+	 * connection is idle. The activity is not tracked by rescheduling the
+	 * timeout on each read, the timeout is rescheduled when it expires for
+	 * the time remaining since the last activity.
 	 * 
 	 * @param channel
-	 * @param buffers
-	 * @throws Exception
 	 */
-	protected void write(final StreamChannel channel, final ByteBuffer[] buffers, long total)
-			throws Exception {
-
-		/*
-		 * // Flip all buffers XnioUtils.flipAll(buffers); WriteChannelListener
-		 * writeListener = (WriteChannelListener)
-		 * ((ChannelListener.SimpleSetter) channel .getWriteSetter()).get();
-		 * writeListener.reset(); long written = channel.write(buffers); //
-		 * Initialize the listener fields writeListener.init(buffers, total,
-		 * written); channel.resumeWrites();
-		 */
+	private void timedOut(StreamChannel channel) {
+		if (isTimedOut(channel)) {
+			IoUtils.safeClose(channel);
+		}
+	}
+
+	/**
+	 * @param channel
+	 * @return <tt>true</tt> if the connection timed out and the channel must
+	 *         be closed
+	 */
+	private synchronized boolean isTimedOut(StreamChannel channel) {
+		if (!channel.isOpen()) {
+			return false;
+		}
+		if (state != SessionState.READY) {
+			logger.warnf("Session handshake timed out [%s] in state %s", session, state);
+			return true;
+		}
+		if (writeListener.isPending()) {
+			// The write listener watches the stalled responses
+			wheel.schedule(timeout, XnioUtils.READ_TIMEOUT, TimeUnit.MILLISECONDS);
+			return false;
+		}
+		long idle = System.currentTimeMillis() - session.getLastActivity();
+		if (idle >= XnioUtils.READ_TIMEOUT) {
+			logger.warnf("Read timed out [%s] after %s ms", session, idle);
+			return true;
+		}
+		wheel.schedule(timeout, XnioUtils.READ_TIMEOUT - idle, TimeUnit.MILLISECONDS);
+		return false;
+	}
+
+	/**
+	 * Release the resources of the listener once the channel is closed
+	 */
+	public synchronized void release() {
+		if (wheel != null) {
+			wheel.cancel(timeout);
+		}
+		releaseBuffer();
+	}
+
+	/**
+	 * Move the bytes of the full read buffer to a larger one, if the buffer
+	 * may still grow
+	 */
+	private void growReadBuffer() {
+		int size = sizer.grow(readBuffer.capacity());
+		if (size > 0) {
+			ByteBuffer buffer = SizeClassBufferPool.getDefault().acquire(size);
+			readBuffer.flip();
+			buffer.put(readBuffer);
+			SizeClassBufferPool.getDefault().restitute(readBuffer);
+			readBuffer = buffer;
+		}
+	}
 
-		for (ByteBuffer byteBuffer : buffers) {
-			write(channel, byteBuffer);
+	/**
+	 * Give back the read buffer to the pool
+	 */
+	public synchronized void releaseBuffer() {
+		decoder.reset();
+		helloDecoder.reset();
+		if (readBuffer != null) {
+			SizeClassBufferPool.getDefault().restitute(readBuffer);
+			readBuffer = null;
 		}
 	}
 
 	/**
+	 * @return <tt>true</tt> if bytes were read and not handled yet, in the
+	 *         read buffer or in the TLS layer
+	 */
+	private boolean isBuffered() {
+		return readBuffer.hasRemaining()
+				|| (session.getSsl() != null && session.getSsl().isBuffered());
+	}
+
+	/**
+	 * Resolve the resource named by the last decoded request through the
+	 * {@link ContentIndex}, straight from the read buffer. A request which
+	 * doesn't name a resource is answered with <i>XnioUtils.DATA_FILE</i>.
+	 * 
+	 * @return the path of the requested file
+	 */
+	private String resolve() {
+		String path = ContentIndex.getInstance().lookup(readBuffer, decoder.getStart(),
+				decoder.getEnd());
+		return path != null ? path : XnioUtils.DATA_FILE;
+	}
+
+	/**
+	 * Queue the response of a request. A response which can't be built fails
+	 * the connection: the client pairs the responses with its requests, it
+	 * can't be answered out of order or not at all.
 	 * 
 	 * @param channel
-	 * @param buffer
+	 * @param path
+	 *            the path of the requested file
 	 * @throws IOException
+	 *             if the file can't be read
 	 */
-	void write(StreamChannel channel, ByteBuffer byteBuffer) throws IOException {
-		byteBuffer.flip();
-		// Wait until the channel becomes writable again
-		channel.awaitWritable();
-		channel.write(byteBuffer);
+	void writeResponse(StreamChannel channel, String path) throws IOException {
+		// The file can't be sent as is when it is encoded or encrypted
+		if (XnioUtils.RESPONSE_MODE == ResponseMode.TRANSFER
+				&& session.getEncoding() == ContentEncoding.IDENTITY && session.getSsl() == null) {
+			transferFile(channel, path);
+			return;
+		}
+		// Take fresh views of the cached content for each response
+		initWriteBuffers(path);
+		adjustSendBuffer(channel, fileLength);
+
+		// Write the file content to the channel
+		write(channel, writeBuffers, fileLength);
 	}
 
 	/**
-	 * Read the file from HD and initialize the write byte buffers array.
+	 * Queue a zero-copy transfer of the file straight from the disk to the
+	 * socket.
 	 * 
+	 * @param channel
+	 * @param path
+	 *            the path of the file
 	 * @throws IOException
 	 */
-	private void initWriteBuffers() throws IOException {
+	protected void transferFile(StreamChannel channel, String path) throws IOException {
+		FileTransfer transfer = FileTransfer.create(path);
+		adjustSendBuffer(channel, transfer.getLength());
+		this.writeListener.enqueue(transfer, this.requestStart);
+	}
 
-		File file = new File("data" + File.separatorChar + "file.txt");
-		RandomAccessFile raf = new RandomAccessFile(file, "r");
-		FileChannel fileChannel = raf.getChannel();
+	/**
+	 * Grow the socket send buffer to the size of the response if needed, so
+	 * that the response is sent with as few writes as possible
+	 * 
+	 * @param channel
+	 * @param length
+	 *            the number of bytes of the response
+	 * @throws IOException
+	 */
+	private void adjustSendBuffer(StreamChannel channel, long length) throws IOException {
+		int size = sizer.sendBufferFor(length);
+		if (size > 0) {
+			channel.setOption(Options.SEND_BUFFER, size);
+			logger.debugf("[%s] Send buffer set to %s bytes", session, size);
+		}
+	}
 
-		fileLength = fileChannel.size() + XnioUtils.CRLF.getBytes().length;
-		double tmp = (double) fileLength / XnioUtils.WRITE_BUFFER_SIZE;
-		int length = (int) Math.ceil(tmp);
-		writeBuffers = new ByteBuffer[length];
+	/**
+	 * Queue the buffers of a response. The response is written by the
+	 * {@link WriteChannelListener} without blocking.
+	 * 
+	 * @param channel
+	 * @param buffers
+	 *            the buffers of the response, ready to be written
+	 * @param total
+	 *            the total number of bytes of the response
+	 * @throws IOException
+	 */
+	protected void write(final StreamChannel channel, final ByteBuffer[] buffers, long total)
+			throws IOException {
+		this.writeListener.enqueue(buffers, this.requestStart);
+	}
 
-		for (int i = 0; i < writeBuffers.length - 1; i++) {
-			writeBuffers[i] = ByteBuffer.allocate(XnioUtils.WRITE_BUFFER_SIZE);
+	/**
+	 * Retrieve views of the shared response content, from the
+	 * {@link MappedContentStore} in <i>mapped</i> mode or else from the
+	 * {@link ContentCache}. The file is only read from the disk the first time
+	 * it is requested (or when it changes), all connections share the same
+	 * read-only content. The encoded variant negotiated by the session always
+	 * comes from the {@link ContentCache}.
+	 * 
+	 * @param path
+	 *            the path of the file
+	 * @throws IOException
+	 */
+	private void initWriteBuffers(String path) throws IOException {
+		Payload payload;
+		if (session.getEncoding() != ContentEncoding.IDENTITY) {
+			// the encoded variants are only kept by the content cache
+			payload = ContentCache.getInstance().get(path).getVariant(session.getEncoding());
+		} else if (XnioUtils.RESPONSE_MODE == ResponseMode.MAPPED) {
+			payload = MappedContentStore.getInstance().get(path);
+		} else {
+			payload = ContentCache.getInstance().get(path);
 		}
+		writeBuffers = payload.getBuffers();
+		fileLength = payload.getLength();
+	}
 
-		int temp = (int) (fileLength % XnioUtils.WRITE_BUFFER_SIZE);
-		writeBuffers[writeBuffers.length - 1] = ByteBuffer.allocate(temp);
-		// Read the whole file in one pass
-		fileChannel.read(writeBuffers);
-		// Close the file channel
-		raf.close();
-		// Put the <i>CRLF</i> chars at the end of the last byte buffer to mark
-		// the end of data
-		writeBuffers[writeBuffers.length - 1].put(XnioUtils.CRLF.getBytes());
+	/**
+	 * Getter for writeListener
+	 * 
+	 * @return the writeListener
+	 */
+	public WriteChannelListener getWriteListener() {
+		return this.writeListener;
 	}
 
 	/**
-	 * Getter for sessionId
+	 * Setter for the writeListener
 	 * 
-	 * @return the sessionId
+	 * @param writeListener
+	 *            the writeListener to set
+	 */
+	public void setWriteListener(WriteChannelListener writeListener) {
+		this.writeListener = writeListener;
+	}
+
+	/**
+	 * @return the ID of the session of the connection
 	 */
 	public String getSessionId() {
-		return this.sessionId;
+		return this.session.getId();
+	}
+
+	/**
+	 * Getter for session
+	 * 
+	 * @return the session
+	 */
+	public Session getSession() {
+		return this.session;
 	}
 
 	/**
-	 * Setter for the sessionId
+	 * Setter for the session
 	 * 
-	 * @param sessionId
-	 *            the sessionId to set
+	 * @param session
+	 *            the session to set
 	 */
-	public void setSessionId(String sessionId) {
-		this.sessionId = sessionId;
+	public void setSession(Session session) {
+		this.session = session;
+	}
+
+	/**
+	 * @return the handshake state of the connection
+	 */
+	public synchronized SessionState getState() {
+		return this.state;
+	}
+
+	/**
+	 * {@code SessionState}
+	 * 
+	 * The states of the session handshake of a connection
+	 * 
+	 * Created on Oct 17, 2026 at 6:12:40 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	public enum SessionState {
+		/**
+		 * Waiting for the greeting line of the client
+		 */
+		AWAITING_HELLO,
+		/**
+		 * The <i>jSessionId</i> reply is being sent
+		 */
+		SENDING_SESSION,
+		/**
+		 * The handshake is complete, the requests are handled
+		 */
+		READY
 	}
 }
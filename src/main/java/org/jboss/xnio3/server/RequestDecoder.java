@@ -0,0 +1,242 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code RequestDecoder}
+ * 
+ * Splits the bytes read from a connection into requests, in place: nothing is
+ * copied out of the read buffer and no object is created per request. A
+ * request is either terminated by a line feed (the <i>CRLF</i> sent by the
+ * clients, a preceding carriage return is not part of the request) or
+ * prefixed by its length on 4 bytes (big-endian).
+ * 
+ * A request split across several reads stays in the read buffer until it is
+ * complete, and a single read holding several requests yields all of them.
+ * The decoder remembers how many bytes of an incomplete request it already
+ * scanned, so the bytes of a request are scanned only once whatever the
+ * number of reads it takes.
+ * 
+ * Created on Oct 17, 2026 at 5:31:07 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class RequestDecoder {
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final int LENGTH_FIELD_SIZE = 4;
+	private final Framing framing;
+	// the largest buffer the requests may be read into, 0 for the capacity
+	// of the buffer being decoded
+	private final int maxSize;
+	// number of bytes already scanned past the buffer position
+	private int scanned;
+	private int start;
+	private int end;
+
+	/**
+	 * Create a new instance of {@code RequestDecoder}
+	 * 
+	 * @param framing
+	 *            the way the requests are delimited
+	 */
+	public RequestDecoder(Framing framing) {
+		this(framing, 0);
+	}
+
+	/**
+	 * Create a new instance of {@code RequestDecoder} for read buffers which
+	 * grow up to <i>maxSize</i> bytes: an incomplete request filling a smaller
+	 * buffer is not rejected, the buffer is expected to grow.
+	 * 
+	 * @param framing
+	 *            the way the requests are delimited
+	 * @param maxSize
+	 *            the size of the largest read buffer
+	 */
+	public RequestDecoder(Framing framing, int maxSize) {
+		this.framing = framing;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Decode the next request from the buffer. The buffer must be in read mode
+	 * (flipped). If a complete request is found, its bounds are available
+	 * from {@link #getStart()} and {@link #getEnd()} and the position of the
+	 * buffer is moved past the request. Else the position of the buffer is
+	 * left at the beginning of the incomplete request, which must be kept
+	 * (e.g. with {@code compact()}) until more bytes are read.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the bytes read
+	 * @return <tt>true</tt> if a complete request was decoded
+	 * @throws IOException
+	 *             if the request is malformed or can't fit in the buffer
+	 */
+	public boolean decode(ByteBuffer buffer) throws IOException {
+		return this.framing == Framing.DELIMITER ? decodeLine(buffer) : decodeFrame(buffer);
+	}
+
+	/**
+	 * @param buffer
+	 * @return <tt>true</tt> if a complete line was decoded
+	 * @throws IOException
+	 */
+	private boolean decodeLine(ByteBuffer buffer) throws IOException {
+		int position = buffer.position();
+		int limit = buffer.limit();
+		for (int i = position + this.scanned; i < limit; i++) {
+			if (buffer.get(i) == LF) {
+				this.start = position;
+				this.end = i > position && buffer.get(i - 1) == CR ? i - 1 : i;
+				this.scanned = 0;
+				buffer.position(i + 1);
+				return true;
+			}
+		}
+
+		this.scanned = limit - position;
+		checkCapacity(buffer);
+		return false;
+	}
+
+	/**
+	 * @param buffer
+	 * @return <tt>true</tt> if a complete frame was decoded
+	 * @throws IOException
+	 */
+	private boolean decodeFrame(ByteBuffer buffer) throws IOException {
+		int position = buffer.position();
+		if (buffer.remaining() >= LENGTH_FIELD_SIZE) {
+			int length = buffer.getInt(position);
+			if (length < 0 || length > getMaxSize(buffer) - LENGTH_FIELD_SIZE) {
+				throw new IOException("Invalid request length: " + length);
+			}
+			if (buffer.remaining() >= LENGTH_FIELD_SIZE + length) {
+				this.start = position + LENGTH_FIELD_SIZE;
+				this.end = this.start + length;
+				buffer.position(this.end);
+				return true;
+			}
+		}
+
+		checkCapacity(buffer);
+		return false;
+	}
+
+	/**
+	 * An incomplete request which already fills the largest buffer will never
+	 * be completed
+	 * 
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private void checkCapacity(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() == buffer.capacity() && buffer.capacity() >= getMaxSize(buffer)) {
+			throw new IOException("Request too large, the maximum size is " + buffer.capacity()
+					+ " bytes");
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @return the maximum size of a request, length field included
+	 */
+	private int getMaxSize(ByteBuffer buffer) {
+		return Math.max(this.maxSize, buffer.capacity());
+	}
+
+	/**
+	 * Forget the bytes already scanned, e.g. when the read buffer is
+	 * discarded
+	 */
+	public void reset() {
+		this.scanned = 0;
+	}
+
+	/**
+	 * @return the index of the first byte of the last decoded request
+	 */
+	public int getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return the index following the last byte of the last decoded request
+	 */
+	public int getEnd() {
+		return this.end;
+	}
+
+	/**
+	 * @return the length of the last decoded request
+	 */
+	public int getLength() {
+		return this.end - this.start;
+	}
+
+	/**
+	 * {@code Framing}
+	 * 
+	 * The way the requests are delimited
+	 * 
+	 * Created on Oct 17, 2026 at 5:31:07 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	public enum Framing {
+		/**
+		 * Each request is terminated by a line feed, optionally preceded by a
+		 * carriage return
+		 */
+		DELIMITER,
+		/**
+		 * Each request is prefixed by its length on 4 bytes (big-endian)
+		 */
+		LENGTH_PREFIXED;
+
+		/**
+		 * Parse the framing name (case insensitive)
+		 * 
+		 * @param name
+		 *            the name of the framing
+		 * @param defaultFraming
+		 *            the framing to return if the name is <tt>null</tt> or
+		 *            unknown
+		 * @return the framing matching the specified name
+		 */
+		public static Framing parse(String name, Framing defaultFraming) {
+			if (name != null) {
+				for (Framing framing : values()) {
+					if (framing.name().equalsIgnoreCase(name.trim())) {
+						return framing;
+					}
+				}
+			}
+			return defaultFraming;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+/**
+ * {@code ResponseMode}
+ * 
+ * The way the response payload is sent back to clients
+ * 
+ * Created on Oct 17, 2026 at 11:20:45 AM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public enum ResponseMode {
+
+	/**
+	 * The payload is written from the buffers of the {@link ContentCache}
+	 */
+	BUFFER,
+	/**
+	 * The payload is streamed from the file to the socket using
+	 * {@code FileChannel.transferTo} without being copied to user space
+	 */
+	TRANSFER,
+	/**
+	 * The payload is written from memory-mapped views of the file provided by
+	 * the {@link MappedContentStore}
+	 */
+	MAPPED;
+
+	/**
+	 * Parse the response mode name (case insensitive)
+	 * 
+	 * @param name
+	 *            the name of the response mode
+	 * @param defaultMode
+	 *            the mode to return if the name is <tt>null</tt> or unknown
+	 * @return the response mode matching the specified name
+	 */
+	public static ResponseMode parse(String name, ResponseMode defaultMode) {
+		if (name != null) {
+			for (ResponseMode mode : values()) {
+				if (mode.name().equalsIgnoreCase(name.trim())) {
+					return mode;
+				}
+			}
+		}
+		return defaultMode;
+	}
+}
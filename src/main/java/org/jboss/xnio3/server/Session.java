@@ -0,0 +1,162 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import org.xnio.channels.StreamChannel;
+
+/**
+ * {@code Session}
+ * 
+ * The state of a client session, shared by the listeners of its connection
+ * and kept by the {@link SessionRegistry}.
+ * 
+ * Created on Oct 17, 2026 at 7:05:52 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class Session {
+
+	private final String id;
+	private final StreamChannel channel;
+	private final long creationTime;
+	private volatile long lastActivity;
+	private ContentEncoding encoding = ContentEncoding.IDENTITY;
+	private SslConnection ssl;
+
+	/**
+	 * Create a new instance of {@code Session}
+	 * 
+	 * @param id
+	 *            the session ID
+	 * @param channel
+	 *            the channel of the connection
+	 */
+	public Session(String id, StreamChannel channel) {
+		this.id = id;
+		this.channel = channel;
+		this.creationTime = this.lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Record an activity on the connection
+	 */
+	public void touch() {
+		this.lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param now
+	 *            the current time in milliseconds
+	 * @param timeout
+	 *            the idle timeout in milliseconds
+	 * @return <tt>true</tt> if nothing happened on the connection during the
+	 *         last <i>timeout</i> milliseconds
+	 */
+	public boolean isIdle(long now, long timeout) {
+		return now - this.lastActivity > timeout;
+	}
+
+	/**
+	 * Getter for id
+	 * 
+	 * @return the id
+	 */
+	public String getId() {
+		return this.id;
+	}
+
+	/**
+	 * Getter for channel
+	 * 
+	 * @return the channel
+	 */
+	public StreamChannel getChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * Getter for creationTime
+	 * 
+	 * @return the creationTime
+	 */
+	public long getCreationTime() {
+		return this.creationTime;
+	}
+
+	/**
+	 * Getter for lastActivity
+	 * 
+	 * @return the lastActivity
+	 */
+	public long getLastActivity() {
+		return this.lastActivity;
+	}
+
+	/**
+	 * Getter for encoding
+	 * 
+	 * @return the encoding of the responses, negotiated by the handshake
+	 */
+	public ContentEncoding getEncoding() {
+		return this.encoding;
+	}
+
+	/**
+	 * Setter for the encoding
+	 * 
+	 * @param encoding
+	 *            the encoding to set
+	 */
+	public void setEncoding(ContentEncoding encoding) {
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Getter for ssl
+	 * 
+	 * @return the TLS layer of the connection, <tt>null</tt> if the
+	 *         connection is not secured
+	 */
+	public SslConnection getSsl() {
+		return this.ssl;
+	}
+
+	/**
+	 * Setter for the ssl
+	 * 
+	 * @param ssl
+	 *            the ssl to set
+	 */
+	public void setSsl(SslConnection ssl) {
+		this.ssl = ssl;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.id;
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xnio.IoUtils;
+
+/**
+ * {@code SessionRegistry}
+ * 
+ * The sessions of the opened connections, indexed by session ID. The sessions
+ * are kept in a striped {@code ConcurrentHashMap}: the lookups are lock free
+ * and the registrations of connections accepted by different threads rarely
+ * contend on the same stripe.
+ * 
+ * The number of sessions is bounded: a connection accepted while the
+ * registry is full is refused. When an idle timeout is set, a background
+ * sweep closes and evicts the sessions without any activity during the
+ * timeout, so abandoned connections don't pile up.
+ * 
+ * Created on Oct 17, 2026 at 7:05:52 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class SessionRegistry {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(SessionRegistry.class);
+	/**
+	 * The number of stripes of the session map
+	 */
+	private static final int CONCURRENCY_LEVEL = 64;
+	private static final SessionRegistry INSTANCE = new SessionRegistry(
+			XnioUtils.SESSION_MAX_COUNT, XnioUtils.SESSION_IDLE_TIMEOUT);
+
+	private final ConcurrentHashMap<String, Session> sessions;
+	private final AtomicInteger size = new AtomicInteger();
+	private final int maxSessions;
+	private final long idleTimeout;
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * Create a new instance of {@code SessionRegistry}
+	 * 
+	 * @param maxSessions
+	 *            the maximum number of sessions, 0 for no limit
+	 * @param idleTimeout
+	 *            the time (in milliseconds) after which an idle session is
+	 *            evicted, 0 to keep idle sessions
+	 */
+	public SessionRegistry(int maxSessions, long idleTimeout) {
+		this.maxSessions = maxSessions > 0 ? maxSessions : Integer.MAX_VALUE;
+		this.idleTimeout = idleTimeout;
+		this.sessions = new ConcurrentHashMap<String, Session>(1024, 0.75f, CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * @return the shared {@code SessionRegistry} instance
+	 */
+	public static SessionRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Start the periodic sweep of the idle sessions. The sweep runs every
+	 * quarter of the idle timeout (at least every second). Does nothing if no
+	 * idle timeout is set or if the sweep is already started.
+	 */
+	public synchronized void start() {
+		if (this.idleTimeout <= 0 || this.sweeper != null) {
+			return;
+		}
+		this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "session-sweeper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long period = Math.max(1000, this.idleTimeout / 4);
+		this.sweeper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					int n = sweep(System.currentTimeMillis());
+					if (n > 0) {
+						logger.infof("Evicted %s idle sessions -> number of remaining sessions %s",
+								n, getSize());
+					}
+				} catch (Throwable t) {
+					logger.error("Session sweep failed", t);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the periodic sweep of the idle sessions
+	 */
+	public synchronized void stop() {
+		if (this.sweeper != null) {
+			this.sweeper.shutdownNow();
+			this.sweeper = null;
+		}
+	}
+
+	/**
+	 * Register a new session
+	 * 
+	 * @param session
+	 *            the session to register
+	 * @return <tt>true</tt> if the session was registered, <tt>false</tt> if
+	 *         the registry is full or the session ID is already used
+	 */
+	public boolean register(Session session) {
+		for (;;) {
+			int n = this.size.get();
+			if (n >= this.maxSessions) {
+				return false;
+			}
+			if (this.size.compareAndSet(n, n + 1)) {
+				break;
+			}
+		}
+		if (this.sessions.putIfAbsent(session.getId(), session) != null) {
+			this.size.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the session from the registry
+	 * 
+	 * @param session
+	 *            the session to remove
+	 * @return <tt>true</tt> if the session was registered
+	 */
+	public boolean unregister(Session session) {
+		if (this.sessions.remove(session.getId(), session)) {
+			this.size.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param id
+	 *            the session ID
+	 * @return the session having the specified ID or <tt>null</tt>
+	 */
+	public Session get(String id) {
+		return this.sessions.get(id);
+	}
+
+	/**
+	 * Close and evict the sessions idle for longer than the idle timeout
+	 * 
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return the number of evicted sessions
+	 */
+	public int sweep(long now) {
+		if (this.idleTimeout <= 0) {
+			return 0;
+		}
+		int n = 0;
+		for (Session session : this.sessions.values()) {
+			if (session.isIdle(now, this.idleTimeout) && unregister(session)) {
+				logger.debugf("Closing idle session [%s]", session);
+				IoUtils.safeClose(session.getChannel());
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of registered sessions
+	 */
+	public int getSize() {
+		return this.size.get();
+	}
+
+	/**
+	 * @return the maximum number of sessions
+	 */
+	public int getMaxSessions() {
+		return this.maxSessions;
+	}
+
+	/**
+	 * @return the idle timeout in milliseconds, 0 if idle sessions are kept
+	 */
+	public long getIdleTimeout() {
+		return this.idleTimeout;
+	}
+}
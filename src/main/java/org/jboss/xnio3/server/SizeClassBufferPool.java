@@ -0,0 +1,332 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@code SizeClassBufferPool}
+ * 
+ * A set of {@link BufferPool}s, one per size class. A request for <i>n</i>
+ * bytes is served by the pool of the smallest class holding at least <i>n</i>
+ * bytes, so small messages don't waste a large buffer. Each class keeps its
+ * own statistics. The buffers go through per-thread {@link BufferCache}
+ * magazines in front of the pools and, when enabled, the acquisitions are
+ * sampled by a {@link BufferLeakDetector}.
+ * 
+ * Created on Oct 17, 2026 at 4:02:18 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class SizeClassBufferPool {
+
+	/**
+	 * The default size classes: 512 B, 4 KB, 16 KB and 64 KB
+	 */
+	public static final int DEFAULT_SIZE_CLASSES[] = { 512, 4 * 1024, 16 * 1024, 64 * 1024 };
+	private static final SizeClassBufferPool DEFAULT = new SizeClassBufferPool(
+			DEFAULT_SIZE_CLASSES, XnioUtils.BUFFER_POOL_MAX_ITEMS, XnioUtils.BUFFER_POOL_MAX_BYTES,
+			XnioUtils.BUFFER_POOL_DIRECT, new BufferLeakDetector(XnioUtils.LEAK_DETECTION_INTERVAL));
+	private final BufferPool pools[];
+	private final BufferCache caches[];
+	private final BufferLeakDetector leakDetector;
+
+	/**
+	 * Create a new instance of {@code SizeClassBufferPool}
+	 * 
+	 * @param sizes
+	 *            the size classes, in ascending order
+	 * @param maxItems
+	 *            the maximum number of buffers of each class
+	 * @param direct
+	 *            <tt>true</tt> to use direct buffers
+	 * @param leakDetector
+	 *            the detector of buffers never restituted
+	 */
+	public SizeClassBufferPool(int sizes[], int maxItems, boolean direct,
+			BufferLeakDetector leakDetector) {
+		this(sizes, maxItems, Long.MAX_VALUE, direct, leakDetector);
+	}
+
+	/**
+	 * Create a new instance of {@code SizeClassBufferPool} bounded by a number
+	 * of bytes. Each size class gets an even share of the bytes, so a class
+	 * holds at most <i>maxBytes / sizes.length / size</i> buffers (and at
+	 * least one): the larger the buffers, the fewer of them.
+	 * 
+	 * @param sizes
+	 *            the size classes, in ascending order
+	 * @param maxItems
+	 *            the maximum number of buffers of each class
+	 * @param maxBytes
+	 *            the maximum number of bytes allocated by all the classes
+	 * @param direct
+	 *            <tt>true</tt> to use direct buffers
+	 * @param leakDetector
+	 *            the detector of buffers never restituted
+	 */
+	public SizeClassBufferPool(int sizes[], int maxItems, long maxBytes, boolean direct,
+			BufferLeakDetector leakDetector) {
+		if (sizes.length == 0) {
+			throw new IllegalArgumentException("At least one size class is required");
+		}
+		this.pools = new BufferPool[sizes.length];
+		this.caches = new BufferCache[sizes.length];
+		for (int i = 0; i < sizes.length; i++) {
+			if (i > 0 && sizes[i] <= sizes[i - 1]) {
+				throw new IllegalArgumentException("The size classes must be in ascending order");
+			}
+			long items = Math.min(maxItems, maxBytes / sizes.length / sizes[i]);
+			this.pools[i] = BufferPool.create(sizes[i], (int) Math.max(1, items), direct);
+			this.caches[i] = new BufferCache(this.pools[i]);
+		}
+		this.leakDetector = leakDetector;
+	}
+
+	/**
+	 * Create a new instance of {@code SizeClassBufferPool} without leak
+	 * detection
+	 * 
+	 * @param sizes
+	 *            the size classes, in ascending order
+	 * @param maxItems
+	 *            the maximum number of buffers of each class
+	 * @param direct
+	 *            <tt>true</tt> to use direct buffers
+	 */
+	public SizeClassBufferPool(int sizes[], int maxItems, boolean direct) {
+		this(sizes, maxItems, direct, new BufferLeakDetector(0));
+	}
+
+	/**
+	 * Create a new instance of {@code SizeClassBufferPool} with the
+	 * <i>DEFAULT_SIZE_CLASSES</i>
+	 * 
+	 * @param maxItems
+	 *            the maximum number of buffers of each class
+	 * @param direct
+	 *            <tt>true</tt> to use direct buffers
+	 */
+	public SizeClassBufferPool(int maxItems, boolean direct) {
+		this(DEFAULT_SIZE_CLASSES, maxItems, direct);
+	}
+
+	/**
+	 * Create a new instance of {@code SizeClassBufferPool} with the
+	 * <i>DEFAULT_SIZE_CLASSES</i>
+	 * 
+	 * @param maxItems
+	 *            the maximum number of buffers of each class
+	 * @param direct
+	 *            <tt>true</tt> to use direct buffers
+	 * @param leakDetector
+	 *            the detector of buffers never restituted
+	 */
+	public SizeClassBufferPool(int maxItems, boolean direct, BufferLeakDetector leakDetector) {
+		this(DEFAULT_SIZE_CLASSES, maxItems, direct, leakDetector);
+	}
+
+	/**
+	 * @return the process-wide pool used by the connections
+	 */
+	public static SizeClassBufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param size
+	 *            the number of bytes requested
+	 * @return the pool of the smallest size class holding at least
+	 *         <i>size</i> bytes
+	 * @throws IllegalArgumentException
+	 *             if <i>size</i> is larger than the largest size class
+	 */
+	public BufferPool getPool(int size) {
+		return this.pools[indexOf(size)];
+	}
+
+	/**
+	 * @param size
+	 * @return the index of the smallest size class holding at least
+	 *         <i>size</i> bytes
+	 */
+	private int indexOf(int size) {
+		for (int i = 0; i < this.pools.length; i++) {
+			if (this.pools[i].getCapacity() >= size) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No size class can hold " + size + " bytes");
+	}
+
+	/**
+	 * Try to acquire a buffer holding at least <i>size</i> bytes without
+	 * blocking
+	 * 
+	 * @param size
+	 *            the number of bytes requested
+	 * @return a cleared buffer, or <tt>null</tt> if the pool of the size class
+	 *         is exhausted
+	 */
+	public ByteBuffer tryAcquire(int size) {
+		ByteBuffer buffer = this.caches[indexOf(size)].tryAcquire();
+		if (buffer != null) {
+			this.leakDetector.acquired(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Acquire a buffer holding at least <i>size</i> bytes without blocking.
+	 * If the pool of the size class is exhausted, an unpooled heap buffer is
+	 * allocated: an I/O thread must never wait for a buffer.
+	 * 
+	 * @param size
+	 *            the number of bytes requested
+	 * @return a cleared buffer
+	 */
+	public ByteBuffer acquire(int size) {
+		ByteBuffer buffer = tryAcquire(size);
+		return buffer != null ? buffer : ByteBuffer.allocate(getPool(size).getCapacity());
+	}
+
+	/**
+	 * Give back a buffer to the pool of its size class. Buffers which don't
+	 * match any size class are dropped.
+	 * 
+	 * @param buffer
+	 * @throws NullPointerException
+	 *             if the <i>buffer<i> is null.
+	 */
+	public void restitute(ByteBuffer buffer) {
+		int index = indexOf(buffer);
+		if (index >= 0) {
+			this.leakDetector.restituted(buffer);
+			this.caches[index].restitute(buffer);
+		}
+	}
+
+	/**
+	 * Acquire a buffer like {@link #acquire(int)}, but from the shared pool of
+	 * the size class, bypassing the magazine of the current thread. A thread
+	 * per connection only lives as long as its connection: a magazine would
+	 * take spare buffers out of the shared pool for nothing.
+	 * 
+	 * @param size
+	 *            the number of bytes requested
+	 * @return a cleared buffer
+	 */
+	public ByteBuffer acquireUncached(int size) {
+		BufferPool pool = getPool(size);
+		ByteBuffer buffer = pool.tryAcquire();
+		if (buffer == null) {
+			return ByteBuffer.allocate(pool.getCapacity());
+		}
+		this.leakDetector.acquired(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Give back a buffer directly to the shared pool of its size class,
+	 * bypassing the magazine of the current thread. Buffers which don't match
+	 * any size class are dropped.
+	 * 
+	 * @param buffer
+	 * @throws NullPointerException
+	 *             if the <i>buffer<i> is null.
+	 */
+	public void restituteUncached(ByteBuffer buffer) {
+		int index = indexOf(buffer);
+		if (index >= 0) {
+			this.leakDetector.restituted(buffer);
+			this.pools[index].restitute(buffer);
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @return the index of the size class of the buffer, <tt>-1</tt> if it
+	 *         doesn't match any
+	 */
+	private int indexOf(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		for (int i = 0; i < this.pools.length; i++) {
+			BufferPool pool = this.pools[i];
+			if (pool.getCapacity() == capacity && pool.isDirect() == buffer.isDirect()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Give back the buffers cached by the current thread to the pools of all
+	 * the size classes. A short-lived thread (e.g. a thread per connection)
+	 * must call this method before it terminates, else its cached buffers are
+	 * lost for the pools.
+	 */
+	public void flushThreadCaches() {
+		for (BufferCache cache : this.caches) {
+			cache.flush();
+		}
+	}
+
+	/**
+	 * @return the pools of the size classes, in ascending order
+	 */
+	public BufferPool[] getPools() {
+		return this.pools.clone();
+	}
+
+	/**
+	 * @return the detector of buffers never restituted
+	 */
+	public BufferLeakDetector getLeakDetector() {
+		return this.leakDetector;
+	}
+
+	/**
+	 * @return the total number of bytes allocated by all the size classes
+	 */
+	public long getAllocatedBytes() {
+		long total = 0;
+		for (BufferPool pool : this.pools) {
+			total += pool.getAllocatedBytes();
+		}
+		return total;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("SizeClassBufferPool[allocatedBytes=").append(
+				getAllocatedBytes());
+		for (BufferPool pool : this.pools) {
+			sb.append(", ").append(pool);
+		}
+		return sb.append(']').toString();
+	}
+}
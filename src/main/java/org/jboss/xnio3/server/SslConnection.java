@@ -0,0 +1,484 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Sequence;
+import org.xnio.channels.StreamChannel;
+import org.xnio.ssl.JsseSslUtils;
+
+/**
+ * {@code SslConnection}
+ * 
+ * The TLS layer of a connection, an {@link SSLEngine} between the listeners
+ * and the socket. The listeners read and write the plain bytes through
+ * {@link #read(StreamChannel, ByteBuffer)} and
+ * {@link #write(StreamChannel, ByteBuffer[], int, int)} instead of the
+ * channel, the records are read and written by the connection without
+ * blocking.
+ * 
+ * The encrypted and decrypted bytes are held in buffers of the shared
+ * {@link SizeClassBufferPool}, borrowed only while bytes are in flight like
+ * the read buffer of the {@link ReadChannelListener}. A response is encrypted
+ * straight from the shared payload buffers: each wrap gathers the queued
+ * buffers into a record, and several records are written with a single
+ * socket write.
+ * 
+ * The delegated tasks of the handshake (key exchange, certificate checks)
+ * run on the worker task pool, the reads of the connection are woken up once
+ * they completed. The sessions are kept by the bounded server session cache
+ * of the {@link SSLContext} so that the reconnecting clients resume them
+ * instead of doing full handshakes.
+ * 
+ * Created on Oct 17, 2026 at 8:42:15 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class SslConnection {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(SslConnection.class);
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+	private final SSLEngine engine;
+	private final SizeClassBufferPool pool = SizeClassBufferPool.getDefault();
+	private final Metrics metrics = Metrics.getInstance();
+	private final int packetSize;
+	private final int applicationSize;
+	// the records read and not unwrapped yet (filled from the position)
+	private ByteBuffer netIn;
+	// the plain bytes unwrapped and not read yet (filled from the position)
+	private ByteBuffer appIn;
+	// the records wrapped and not written yet (filled from the position)
+	private ByteBuffer netOut;
+	// a complete record is waiting for room in appIn
+	private boolean overflow;
+	private boolean tasksRunning;
+	// a handshake record couldn't be written, the handshake resumes once it
+	// is flushed
+	private boolean handshakeBlocked;
+	private boolean handshaking = true;
+	private final long handshakeStart;
+
+	/**
+	 * Create a new instance of {@code SslConnection}
+	 * 
+	 * @param engine
+	 *            the engine of the connection, in server mode
+	 * @throws IOException
+	 *             if the handshake can't be started
+	 */
+	public SslConnection(SSLEngine engine) throws IOException {
+		this.engine = engine;
+		this.packetSize = engine.getSession().getPacketBufferSize();
+		this.applicationSize = engine.getSession().getApplicationBufferSize();
+		this.handshakeStart = System.currentTimeMillis();
+		engine.beginHandshake();
+	}
+
+	/**
+	 * Build the TLS options from the <i>org.jboss.xnio3.ssl</i> properties
+	 * 
+	 * @return the TLS options of the server
+	 */
+	public static OptionMap createOptions() {
+		OptionMap.Builder builder = OptionMap.builder();
+		builder.set(Options.SSL_SERVER_SESSION_CACHE_SIZE, XnioUtils.SSL_SESSION_CACHE_SIZE);
+		builder.set(Options.SSL_SERVER_SESSION_TIMEOUT, XnioUtils.SSL_SESSION_TIMEOUT);
+		builder.set(Options.SSL_PROTOCOL, XnioUtils.SSL_PROTOCOL);
+		if (XnioUtils.SSL_ENABLED_PROTOCOLS != null) {
+			builder.setSequence(Options.SSL_ENABLED_PROTOCOLS,
+					XnioUtils.SSL_ENABLED_PROTOCOLS.split("\\s*,\\s*"));
+		}
+		return builder.getMap();
+	}
+
+	/**
+	 * Create the server {@link SSLContext} from the keystore
+	 * <i>XnioUtils.SSL_KEYSTORE</i>
+	 * 
+	 * @param options
+	 *            the TLS options of the server
+	 * @return a new initialized {@code SSLContext}
+	 * @throws IOException
+	 *             if the keystore can't be read
+	 * @throws GeneralSecurityException
+	 *             if the keystore or the options are invalid
+	 */
+	public static SSLContext createContext(OptionMap options) throws IOException,
+			GeneralSecurityException {
+		char password[] = XnioUtils.SSL_KEYSTORE_PASSWORD.toCharArray();
+		KeyStore keyStore = KeyStore.getInstance(XnioUtils.SSL_KEYSTORE_TYPE);
+		InputStream in = new FileInputStream(XnioUtils.SSL_KEYSTORE);
+		try {
+			keyStore.load(in, password);
+		} finally {
+			IoUtils.safeClose(in);
+		}
+		KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory
+				.getDefaultAlgorithm());
+		factory.init(keyStore, password);
+		return JsseSslUtils.createSSLContext(factory.getKeyManagers(), null, null, options);
+	}
+
+	/**
+	 * Create the engine of a new accepted connection. The peer address is not
+	 * given to the engine: the server sessions are cached by ID, and resolving
+	 * the host name of each client would block the I/O thread.
+	 * 
+	 * @param context
+	 *            the server {@code SSLContext}
+	 * @param options
+	 *            the TLS options of the server
+	 * @return a new engine in server mode
+	 */
+	public static SSLEngine createEngine(SSLContext context, OptionMap options) {
+		SSLEngine engine = context.createSSLEngine();
+		engine.setUseClientMode(false);
+		Sequence<String> protocols = options.get(Options.SSL_ENABLED_PROTOCOLS);
+		if (protocols != null) {
+			engine.setEnabledProtocols(protocols.toArray(new String[protocols.size()]));
+		}
+		return engine;
+	}
+
+	/**
+	 * Read the plain bytes available without blocking. The records read from
+	 * the channel are unwrapped, and the handshake is moved forward when it
+	 * is not complete.
+	 * 
+	 * @param channel
+	 *            the channel of the connection
+	 * @param dst
+	 *            the buffer to read into
+	 * @return the number of bytes read, possibly 0, or -1 if the connection
+	 *         was closed by the client
+	 * @throws IOException
+	 */
+	public synchronized int read(StreamChannel channel, ByteBuffer dst) throws IOException {
+		int n = drain(dst);
+		if (this.tasksRunning || !dst.hasRemaining()) {
+			return n;
+		}
+		if (this.netIn == null) {
+			this.netIn = this.pool.acquire(this.packetSize);
+		}
+		boolean eof = channel.read(this.netIn) < 0;
+		this.netIn.flip();
+		try {
+			eof |= unwrap(channel);
+		} finally {
+			this.netIn.compact();
+		}
+		n += drain(dst);
+		releaseEmpty();
+		return n == 0 && eof && !this.overflow ? -1 : n;
+	}
+
+	/**
+	 * Unwrap the records of <i>netIn</i> and move the handshake forward
+	 * 
+	 * @param channel
+	 * @return <tt>true</tt> if the client closed the TLS connection
+	 * @throws IOException
+	 */
+	private boolean unwrap(StreamChannel channel) throws IOException {
+		this.overflow = false;
+		for (;;) {
+			HandshakeStatus status = this.engine.getHandshakeStatus();
+			if (status == HandshakeStatus.NEED_TASK) {
+				runTasks(channel);
+				return false;
+			}
+			if (status == HandshakeStatus.NEED_WRAP) {
+				if (!wrapHandshake(channel)) {
+					return false;
+				}
+				continue;
+			}
+			if (!this.netIn.hasRemaining()) {
+				return false;
+			}
+			if (this.appIn == null) {
+				this.appIn = this.pool.acquire(this.applicationSize);
+			}
+			SSLEngineResult result = this.engine.unwrap(this.netIn, this.appIn);
+			status = result.getHandshakeStatus();
+			if (status == HandshakeStatus.FINISHED) {
+				handshakeFinished();
+			}
+			switch (result.getStatus()) {
+			case BUFFER_UNDERFLOW:
+				// wait for the rest of the record
+				return false;
+			case BUFFER_OVERFLOW:
+				// the record is unwrapped once the plain bytes are read
+				this.overflow = true;
+				return false;
+			case CLOSED:
+				return true;
+			default:
+				if (result.bytesConsumed() == 0 && status != HandshakeStatus.NEED_TASK
+						&& status != HandshakeStatus.NEED_WRAP) {
+					return false;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Wrap and write a handshake record
+	 * 
+	 * @param channel
+	 * @return <tt>true</tt> if the record was written
+	 * @throws IOException
+	 */
+	private boolean wrapHandshake(StreamChannel channel) throws IOException {
+		if (flush(channel)) {
+			if (this.netOut == null) {
+				this.netOut = this.pool.acquire(this.packetSize);
+			}
+			SSLEngineResult result = this.engine.wrap(EMPTY_BUFFER, this.netOut);
+			if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+				throw new ClosedChannelException();
+			}
+			if (result.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+				handshakeFinished();
+			}
+			if (flush(channel)) {
+				return true;
+			}
+		}
+		// the handshake resumes once the write listener flushed the record
+		this.handshakeBlocked = true;
+		channel.resumeWrites();
+		return false;
+	}
+
+	/**
+	 * Run the delegated tasks of the handshake on the worker task pool, the
+	 * reads are woken up once they are all done
+	 * 
+	 * @param channel
+	 */
+	private void runTasks(final StreamChannel channel) {
+		this.tasksRunning = true;
+		// the records received meanwhile wait in the socket
+		channel.suspendReads();
+		channel.getWorker().execute(new Runnable() {
+			public void run() {
+				try {
+					Runnable task;
+					while ((task = engine.getDelegatedTask()) != null) {
+						task.run();
+					}
+				} catch (Throwable t) {
+					logger.errorf(t, "Handshake task failed: %s", t.getMessage());
+					IoUtils.safeClose(channel);
+					return;
+				}
+				synchronized (SslConnection.this) {
+					tasksRunning = false;
+				}
+				channel.wakeupReads();
+			}
+		});
+	}
+
+	/**
+	 * Count the completed handshake. A session created before the handshake
+	 * started was resumed from the session cache.
+	 */
+	private void handshakeFinished() {
+		if (this.handshaking) {
+			this.handshaking = false;
+			boolean resumed = this.engine.getSession().getCreationTime() < this.handshakeStart;
+			this.metrics.sslHandshake(resumed);
+			logger.debugf("TLS handshake finished (%s, %s, resumed=%s)", this.engine
+					.getSession().getProtocol(), this.engine.getSession().getCipherSuite(),
+					resumed);
+		}
+	}
+
+	/**
+	 * Move the unwrapped bytes to the destination buffer
+	 * 
+	 * @param dst
+	 * @return the number of bytes moved
+	 */
+	private int drain(ByteBuffer dst) {
+		if (this.appIn == null || this.appIn.position() == 0) {
+			return 0;
+		}
+		this.appIn.flip();
+		int n = Math.min(this.appIn.remaining(), dst.remaining());
+		if (n == this.appIn.remaining()) {
+			dst.put(this.appIn);
+		} else {
+			int limit = this.appIn.limit();
+			this.appIn.limit(this.appIn.position() + n);
+			dst.put(this.appIn);
+			this.appIn.limit(limit);
+		}
+		this.appIn.compact();
+		return n;
+	}
+
+	/**
+	 * Encrypt the plain bytes of the buffers and write the records without
+	 * blocking. The wraps gather the buffers into records, the records are
+	 * written once the write buffer can't take another one.
+	 * 
+	 * @param channel
+	 *            the channel of the connection
+	 * @param srcs
+	 *            the buffers to write
+	 * @param offset
+	 *            the index of the first buffer to write
+	 * @param length
+	 *            the number of buffers to write
+	 * @return the number of plain bytes consumed, the records holding them may
+	 *         not be completely written yet
+	 * @throws IOException
+	 */
+	public synchronized long write(StreamChannel channel, ByteBuffer[] srcs, int offset,
+			int length) throws IOException {
+		if (!flush(channel)) {
+			return 0;
+		}
+		long consumed = 0;
+		this.netOut = this.pool.acquire(this.packetSize);
+		try {
+			while (this.netOut.remaining() >= this.packetSize) {
+				SSLEngineResult result = this.engine.wrap(srcs, offset, length, this.netOut);
+				if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+					throw new ClosedChannelException();
+				}
+				if (result.getStatus() != SSLEngineResult.Status.OK
+						|| result.bytesProduced() == 0) {
+					break;
+				}
+				consumed += result.bytesConsumed();
+			}
+		} finally {
+			flush(channel);
+		}
+		return consumed;
+	}
+
+	/**
+	 * Write the pending records without blocking
+	 * 
+	 * @param channel
+	 *            the channel of the connection
+	 * @return <tt>true</tt> if all the records were written, else
+	 *         <tt>false</tt>
+	 * @throws IOException
+	 */
+	public synchronized boolean flush(StreamChannel channel) throws IOException {
+		if (this.netOut == null) {
+			return true;
+		}
+		this.netOut.flip();
+		try {
+			while (this.netOut.hasRemaining() && channel.write(this.netOut) > 0) {
+				// write as much as possible
+			}
+		} finally {
+			this.netOut.compact();
+		}
+		if (this.netOut.position() > 0) {
+			return false;
+		}
+		this.pool.restitute(this.netOut);
+		this.netOut = null;
+		if (this.handshakeBlocked) {
+			// move the handshake forward on the read thread
+			this.handshakeBlocked = false;
+			channel.wakeupReads();
+		}
+		return true;
+	}
+
+	/**
+	 * @return <tt>true</tt> if plain bytes can be read without reading the
+	 *         channel
+	 */
+	public synchronized boolean isBuffered() {
+		return this.overflow || (this.appIn != null && this.appIn.position() > 0);
+	}
+
+	/**
+	 * Give back the empty buffers to the pool
+	 */
+	private void releaseEmpty() {
+		if (this.netIn != null && this.netIn.position() == 0) {
+			this.pool.restitute(this.netIn);
+			this.netIn = null;
+		}
+		if (this.appIn != null && this.appIn.position() == 0) {
+			this.pool.restitute(this.appIn);
+			this.appIn = null;
+		}
+	}
+
+	/**
+	 * Give back all the buffers to the pool once the channel is closed
+	 */
+	public synchronized void release() {
+		if (this.netIn != null) {
+			this.pool.restitute(this.netIn);
+			this.netIn = null;
+		}
+		if (this.appIn != null) {
+			this.pool.restitute(this.appIn);
+			this.appIn = null;
+		}
+		if (this.netOut != null) {
+			this.pool.restitute(this.netOut);
+			this.netOut = null;
+		}
+		this.engine.closeOutbound();
+	}
+
+	/**
+	 * @return the engine of the connection
+	 */
+	public SSLEngine getEngine() {
+		return this.engine;
+	}
+}
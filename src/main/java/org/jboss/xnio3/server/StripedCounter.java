@@ -0,0 +1,101 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code StripedCounter}
+ * 
+ * A counter updated by many threads without contention: each thread adds to
+ * one of several stripes, chosen from the thread ID, and the stripes are
+ * summed when the counter is read. The stripes are spread over an
+ * {@code AtomicLongArray} one cache line apart, so that two threads updating
+ * different stripes don't share a cache line. This is the idea of the Java 8
+ * {@code LongAdder}, which is not available on the targeted platform.
+ * 
+ * Created on Oct 17, 2026 at 9:05:33 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class StripedCounter {
+
+	// the number of longs of a cache line
+	private static final int PADDING = 8;
+	private static final int STRIPES = stripes();
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * Create a new instance of {@code StripedCounter}
+	 */
+	public StripedCounter() {
+		super();
+	}
+
+	/**
+	 * @return the number of stripes, the power of two following the number of
+	 *         processors
+	 */
+	private static int stripes() {
+		int n = Runtime.getRuntime().availableProcessors();
+		return Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+	}
+
+	/**
+	 * Add the value to the counter
+	 * 
+	 * @param value
+	 */
+	public void add(long value) {
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		this.cells.addAndGet(stripe * PADDING, value);
+	}
+
+	/**
+	 * Add one to the counter
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * @return the value of the counter. The updates made while the counter is
+	 *         read may or may not be accounted.
+	 */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += this.cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return Long.toString(get());
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.xnio.XnioExecutor;
+
+/**
+ * {@code TimerWheel}
+ * 
+ * A hashed timer wheel ticked by an XNIO I/O thread: the wheel reschedules
+ * its own tick on the thread with {@link XnioExecutor#executeAfter}, so no
+ * scheduler thread is involved and the timeouts expire on the I/O thread of
+ * the connection. Each I/O thread has its own wheel (see
+ * {@link #get(XnioExecutor)}).
+ * 
+ * The wheel has <i>WHEEL_SIZE</i> buckets of <i>XnioUtils.TIMER_TICK</i>
+ * milliseconds. A {@link Timeout} is linked in the bucket of its deadline
+ * tick, scheduling and cancelling a timeout are O(1) and allocate nothing:
+ * the timeouts are intrusive list nodes, allocated once per connection and
+ * re-armed as often as needed. The timeouts are expired with a precision of
+ * one tick. The wheel only ticks while timeouts are pending.
+ * 
+ * Created on Oct 17, 2026 at 7:38:20 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public final class TimerWheel implements Runnable {
+
+	private static final AsyncLogger logger = AsyncLogger.getLogger(TimerWheel.class);
+	private static final int WHEEL_SIZE = 512;
+	private static final int MASK = WHEEL_SIZE - 1;
+	private static final ConcurrentHashMap<XnioExecutor, TimerWheel> wheels = new ConcurrentHashMap<XnioExecutor, TimerWheel>();
+
+	private final XnioExecutor executor;
+	private final long tickDuration;
+	private final long startTime;
+	private final Timeout buckets[] = new Timeout[WHEEL_SIZE];
+	// the timeouts expired by the current tick, only used by the I/O thread
+	private final ArrayList<Timeout> expired = new ArrayList<Timeout>();
+	// the last tick processed
+	private long tick;
+	private int size;
+	private boolean ticking;
+
+	/**
+	 * Create a new instance of {@code TimerWheel}
+	 * 
+	 * @param executor
+	 *            the I/O thread ticking the wheel
+	 * @param tickDuration
+	 *            the duration of a tick in milliseconds
+	 */
+	public TimerWheel(XnioExecutor executor, long tickDuration) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("The tick duration must be positive");
+		}
+		this.executor = executor;
+		this.tickDuration = tickDuration;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param executor
+	 *            an I/O thread
+	 * @return the timer wheel of the I/O thread
+	 */
+	public static TimerWheel get(XnioExecutor executor) {
+		TimerWheel wheel = wheels.get(executor);
+		if (wheel == null) {
+			TimerWheel newWheel = new TimerWheel(executor, XnioUtils.TIMER_TICK);
+			wheel = wheels.putIfAbsent(executor, newWheel);
+			if (wheel == null) {
+				wheel = newWheel;
+			}
+		}
+		return wheel;
+	}
+
+	/**
+	 * Schedule the timeout, replacing its previous deadline if it is already
+	 * scheduled.
+	 * 
+	 * @param timeout
+	 *            the timeout to schedule
+	 * @param delay
+	 *            the delay before the timeout expires
+	 * @param unit
+	 *            the unit of the delay
+	 */
+	public synchronized void schedule(Timeout timeout, long delay, TimeUnit unit) {
+		if (timeout.wheel != null && timeout.wheel != this) {
+			throw new IllegalStateException("The timeout is scheduled on another wheel");
+		}
+		long now = currentTick();
+		if (!this.ticking) {
+			// catch up with the time elapsed since the wheel stopped ticking
+			this.tick = now;
+		}
+		if (timeout.wheel == this) {
+			unlink(timeout);
+		}
+		// The deadline is counted from the current time, not from the last
+		// tick processed: the I/O thread may lag behind
+		long ticks = (unit.toMillis(delay) + this.tickDuration - 1) / this.tickDuration;
+		timeout.deadline = now + Math.max(1, ticks);
+		timeout.bucket = (int) (timeout.deadline & MASK);
+		link(timeout);
+
+		if (!this.ticking) {
+			this.ticking = true;
+			this.executor.executeAfter(this, this.tickDuration, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Cancel the timeout
+	 * 
+	 * @param timeout
+	 *            the timeout to cancel
+	 * @return <tt>true</tt> if the timeout was scheduled on this wheel
+	 */
+	public synchronized boolean cancel(Timeout timeout) {
+		if (timeout.wheel != this) {
+			return false;
+		}
+		unlink(timeout);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		synchronized (this) {
+			long target = currentTick();
+			while (this.tick < target && this.size > 0) {
+				this.tick++;
+				Timeout timeout = this.buckets[(int) (this.tick & MASK)];
+				while (timeout != null) {
+					Timeout next = timeout.next;
+					if (timeout.deadline <= this.tick) {
+						unlink(timeout);
+						this.expired.add(timeout);
+					}
+					timeout = next;
+				}
+			}
+			if (this.size > 0) {
+				this.executor.executeAfter(this, this.tickDuration, TimeUnit.MILLISECONDS);
+			} else {
+				this.ticking = false;
+			}
+		}
+
+		// The timeouts are expired without holding the lock of the wheel,
+		// they may be scheduled again meanwhile
+		for (int i = 0; i < this.expired.size(); i++) {
+			try {
+				this.expired.get(i).expire();
+			} catch (Throwable t) {
+				logger.errorf(t, "Timeout failed: %s", t.getMessage());
+			}
+		}
+		this.expired.clear();
+	}
+
+	/**
+	 * @return the tick matching the current time
+	 */
+	private long currentTick() {
+		return (System.currentTimeMillis() - this.startTime) / this.tickDuration;
+	}
+
+	/**
+	 * @param timeout
+	 */
+	private void link(Timeout timeout) {
+		Timeout head = this.buckets[timeout.bucket];
+		timeout.prev = null;
+		timeout.next = head;
+		if (head != null) {
+			head.prev = timeout;
+		}
+		this.buckets[timeout.bucket] = timeout;
+		timeout.wheel = this;
+		this.size++;
+	}
+
+	/**
+	 * @param timeout
+	 */
+	private void unlink(Timeout timeout) {
+		if (timeout.prev == null) {
+			this.buckets[timeout.bucket] = timeout.next;
+		} else {
+			timeout.prev.next = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = timeout.next = null;
+		timeout.wheel = null;
+		this.size--;
+	}
+
+	/**
+	 * @return the number of pending timeouts
+	 */
+	public synchronized int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * {@code Timeout}
+	 * 
+	 * A reusable timeout, linked in a bucket of the wheel while it is
+	 * scheduled.
+	 * 
+	 * Created on Oct 17, 2026 at 7:38:20 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	public static abstract class Timeout {
+
+		private TimerWheel wheel;
+		private Timeout prev;
+		private Timeout next;
+		private long deadline;
+		private int bucket;
+
+		/**
+		 * Called on the I/O thread of the wheel when the timeout expires
+		 */
+		protected abstract void expire();
+	}
+}
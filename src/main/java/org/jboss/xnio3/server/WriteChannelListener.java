@@ -23,30 +23,122 @@ package org.jboss.xnio3.server;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
 import org.xnio.channels.StreamChannel;
 
 /**
  * {@code WriteChannelListener}
  * 
+ * The non-blocking write side of a connection. The responses are queued in
+ * order with the {@code enqueue} methods and sent by {@link #flush} with a
+ * single gathering write of all the queued buffers (a zero-copy file transfer
+ * interrupts the gathering write, the buffers queued after it are written
+ * once it completes). When the socket can't take everything, the writes are
+ * resumed and the listener continues exactly where the previous write
+ * stopped on the next write-ready event.
+ * 
+ * The number of outstanding responses of a connection is limited: once the
+ * limit is reached, the reads of the connection are suspended until the
+ * queue drains below it. With a limit of one response, a connection reads
+ * its next request only once the previous response is completely sent. The
+ * queued bytes are limited the same way: above the high water mark the reads
+ * are suspended, and they are resumed once the queue drains below the low
+ * water mark. The queued bytes of all the connections are also accounted in
+ * the global {@link OutboundBudget}, a connection doesn't read while the
+ * budget is exhausted.
+ * 
+ * A response which doesn't progress for <i>XnioUtils.WRITE_TIMEOUT</i>
+ * milliseconds (e.g. the client stopped reading) is abandoned and the
+ * connection closed, which releases the buffers and the files it holds.
+ * 
+ * The queue is shared by the read thread, which fills it, and the write
+ * thread, which drains it, all the accesses are synchronized on the listener.
+ * The channel is never closed while the listener is locked: the close
+ * listener runs on the closing thread and locks the read listener, which
+ * itself locks this listener when it queues responses.
+ * 
  * Created on Nov 22, 2011 at 4:47:23 PM
  * 
  * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
  */
 public class WriteChannelListener implements ChannelListener<StreamChannel> {
 
-	private int offset = 0;
-	private long written = 0;
-	private ByteBuffer buffers[];
-	private long total = 0;
-	private String sessionId;
+	private static final AsyncLogger logger = AsyncLogger.getLogger(WriteChannelListener.class);
+	private static final int INITIAL_QUEUE_SIZE = 16;
+	// the queued buffers, a slot holds either a buffer or a file transfer
+	private ByteBuffer buffers[] = new ByteBuffer[INITIAL_QUEUE_SIZE];
+	private FileTransfer transfers[] = new FileTransfer[INITIAL_QUEUE_SIZE];
+	// whether the slot is the last one of a response
+	private boolean ends[] = new boolean[INITIAL_QUEUE_SIZE];
+	// the System.nanoTime() at which the request of the response (ending at
+	// the slot) was received, 0 if the response doesn't answer a request
+	private long starts[] = new long[INITIAL_QUEUE_SIZE];
+	private final Metrics metrics = Metrics.getInstance();
+	// index of the first slot having remaining bytes
+	private int head = 0;
+	private int tail = 0;
+	private int outstanding = 0;
+	private final int maxOutstanding;
+	private final long highWater;
+	private final long lowWater;
+	// the bytes queued and not sent yet
+	private long pendingBytes;
+	private final OutboundBudget budget = OutboundBudget.getInstance();
+	private boolean awaitingBudget;
+	// encrypted records are waiting to be written
+	private boolean sslPending;
+	private boolean readsSuspended;
+	private boolean wakeupReads;
+	private Session session;
+	private TimerWheel wheel;
+	private TimerWheel.Timeout timeout;
+	private boolean watching;
+	private long lastProgress;
 
 	/**
-	 * Create a new instance of {@code WriteChannelListener}
+	 * Create a new instance of {@code WriteChannelListener} allowing one
+	 * outstanding response
 	 */
 	public WriteChannelListener() {
-		super();
+		this(1);
+	}
+
+	/**
+	 * Create a new instance of {@code WriteChannelListener}
+	 * 
+	 * @param maxOutstanding
+	 *            the maximum number of responses queued before the reads of
+	 *            the connection are suspended
+	 */
+	public WriteChannelListener(int maxOutstanding) {
+		this(maxOutstanding, XnioUtils.OUTBOUND_HIGH_WATER, XnioUtils.OUTBOUND_LOW_WATER);
+	}
+
+	/**
+	 * Create a new instance of {@code WriteChannelListener}
+	 * 
+	 * @param maxOutstanding
+	 *            the maximum number of responses queued before the reads of
+	 *            the connection are suspended
+	 * @param highWater
+	 *            the number of queued bytes above which the reads are
+	 *            suspended
+	 * @param lowWater
+	 *            the number of queued bytes below which the reads are resumed
+	 */
+	public WriteChannelListener(int maxOutstanding, long highWater, long lowWater) {
+		if (maxOutstanding < 1) {
+			throw new IllegalArgumentException("At least one outstanding response is required");
+		}
+		if (lowWater > highWater) {
+			throw new IllegalArgumentException("The low water mark exceeds the high water mark");
+		}
+		this.maxOutstanding = maxOutstanding;
+		this.highWater = highWater;
+		this.lowWater = lowWater;
 	}
 
 	/*
@@ -56,129 +148,468 @@ public class WriteChannelListener implements ChannelListener<StreamChannel> {
 	 */
 	@Override
 	public void handleEvent(StreamChannel channel) {
+		if (!handleWrites(channel)) {
+			IoUtils.safeClose(channel);
+		}
+	}
 
-		if (this.total > 0) {
-			if (this.written < this.total) {
-				this.offset = (int) (this.written / XnioUtils.WRITE_BUFFER_SIZE);
-				try {
-					// Update the value of written bytes
-					this.written += channel.write(buffers, offset, buffers.length - offset);
-				} catch (IOException e) {
-					e.printStackTrace();
+	/**
+	 * Write the queued responses and resume the reads once the queue drained
+	 * 
+	 * @param channel
+	 * @return <tt>false</tt> if the write failed and the channel must be
+	 *         closed
+	 */
+	private synchronized boolean handleWrites(StreamChannel channel) {
+		session.touch();
+		try {
+			if (flush(channel)) {
+				channel.suspendWrites();
+			}
+			this.awaitingBudget = false;
+			if (this.readsSuspended && this.outstanding < this.maxOutstanding
+					&& this.pendingBytes <= this.lowWater) {
+				if (this.budget.isExhausted()) {
+					awaitBudget(channel);
+				} else {
+					// Handle the next requests
+					this.readsSuspended = false;
+					if (this.wakeupReads) {
+						// requests are waiting in the read buffer
+						this.wakeupReads = false;
+						channel.wakeupReads();
+					} else {
+						channel.resumeReads();
+					}
 				}
 			}
+		} catch (IOException e) {
+			logger.errorf(e, "Exception: %s", e.getMessage());
+			metrics.error();
+			reset();
+			return false;
+		}
+		return true;
+	}
 
-			if (this.written == this.total) {
-				reset();
-				channel.suspendWrites();
+	/**
+	 * Write as many queued bytes as possible without blocking.
+	 * 
+	 * @param channel
+	 *            the channel to write to
+	 * @return <tt>true</tt> if the queue is empty, else <tt>false</tt>
+	 * @throws IOException
+	 */
+	public synchronized boolean flush(StreamChannel channel) throws IOException {
+		SslConnection ssl = this.session.getSsl();
+		while (this.head < this.tail) {
+			FileTransfer transfer = this.transfers[this.head];
+			if (transfer != null) {
+				long transferred = transfer.getTransferred();
+				boolean done = transfer.transfer(channel);
+				if (transfer.getTransferred() > transferred) {
+					sent(transfer.getTransferred() - transferred);
+				}
+				if (!done) {
+					return false;
+				}
+				transfer.release();
+				this.transfers[this.head] = null;
+				advance();
+				continue;
+			}
+
+			// gather all the buffers up to the next file transfer
+			int end = this.head + 1;
+			while (end < this.tail && this.transfers[end] == null) {
+				end++;
+			}
+			long n = ssl == null ? channel.write(this.buffers, this.head, end - this.head) : ssl
+					.write(channel, this.buffers, this.head, end - this.head);
+			if (n <= 0) {
+				return false;
+			}
+			sent(n);
+			// Skip the buffers written completely
+			while (this.head < end && !this.buffers[this.head].hasRemaining()) {
+				this.buffers[this.head] = null;
+				advance();
 			}
 		}
+
+		// The queue is empty, start again from the beginning of the arrays
+		this.head = this.tail = 0;
+		// The last records may still wait in the TLS layer
+		this.sslPending = ssl != null && !ssl.flush(channel);
+		return !this.sslPending;
+	}
+
+	/**
+	 * Account for sent bytes
+	 * 
+	 * @param n
+	 *            the number of bytes sent
+	 */
+	private void sent(long n) {
+		this.metrics.bytesWritten(n);
+		this.pendingBytes -= n;
+		this.budget.release(n);
+		this.metrics.outboundReleased(n);
+		this.lastProgress = System.currentTimeMillis();
+	}
+
+	/**
+	 * Account for queued bytes
+	 * 
+	 * @param n
+	 *            the number of bytes queued
+	 */
+	private void queued(long n) {
+		this.pendingBytes += n;
+		this.budget.reserve(n);
+		this.metrics.outboundQueued(n);
 	}
 
 	/**
-	 * Initialize the Channel listener fields
+	 * Wait for the global budget, once
 	 * 
-	 * @param buffers
-	 * @param total
-	 * @param written
+	 * @param channel
 	 */
-	public void init(ByteBuffer[] buffers, long total, long written) {
-		this.buffers = buffers;
-		this.written = written;
-		this.total = total;
+	private void awaitBudget(StreamChannel channel) {
+		if (!this.awaitingBudget) {
+			this.awaitingBudget = true;
+			this.budget.await(channel);
+		}
 	}
 
 	/**
-	 * Reset the write handler counters
+	 * Move to the next slot
 	 */
-	public void reset() {
-		this.total = 0;
-		this.offset = 0;
-		this.written = 0;
-		this.buffers = null;
+	private void advance() {
+		if (this.ends[this.head]) {
+			this.ends[this.head] = false;
+			if (this.starts[this.head] != 0) {
+				this.metrics.responseSent(this.starts[this.head]);
+				this.starts[this.head] = 0;
+			}
+			this.outstanding--;
+		}
+		this.head++;
 	}
 
 	/**
+	 * Queue a new response
 	 * 
-	 * @param nBytes
+	 * @param response
+	 *            the buffers of the response, ready to be written
 	 */
-	public void addWritten(long nBytes) {
-		this.written += nBytes;
+	public synchronized void enqueue(ByteBuffer[] response) {
+		enqueue(response, 0);
 	}
 
 	/**
-	 * Getter for buffers
+	 * Queue the response of a request
 	 * 
-	 * @return the buffers
+	 * @param response
+	 *            the buffers of the response, ready to be written
+	 * @param start
+	 *            the {@code System.nanoTime()} at which the request was
+	 *            received
 	 */
-	public ByteBuffer[] getBuffers() {
-		return this.buffers;
+	public synchronized void enqueue(ByteBuffer[] response, long start) {
+		if (response.length == 0) {
+			return;
+		}
+		ensureCapacity(response.length);
+		long n = 0;
+		for (ByteBuffer buffer : response) {
+			n += buffer.remaining();
+		}
+		queued(n);
+		System.arraycopy(response, 0, this.buffers, this.tail, response.length);
+		this.tail += response.length;
+		this.ends[this.tail - 1] = true;
+		this.starts[this.tail - 1] = start;
+		this.outstanding++;
 	}
 
 	/**
-	 * Setter for the buffers
+	 * Queue a new file transfer response
 	 * 
-	 * @param buffers
-	 *            the buffers to set
+	 * @param transfer
+	 *            the file transfer to send
 	 */
-	public void setBuffers(ByteBuffer[] buffers) {
-		this.buffers = buffers;
+	public synchronized void enqueue(FileTransfer transfer) {
+		enqueue(transfer, 0);
 	}
 
 	/**
-	 * Getter for offset
+	 * Queue the file transfer response of a request
 	 * 
-	 * @return the offset
+	 * @param transfer
+	 *            the file transfer to send
+	 * @param start
+	 *            the {@code System.nanoTime()} at which the request was
+	 *            received
 	 */
-	public int getOffset() {
-		return this.offset;
+	public synchronized void enqueue(FileTransfer transfer, long start) {
+		ensureCapacity(1);
+		queued(transfer.getLength() - transfer.getTransferred());
+		this.transfers[this.tail] = transfer;
+		this.starts[this.tail] = start;
+		this.ends[this.tail++] = true;
+		this.outstanding++;
+	}
+
+	/**
+	 * Make room for <i>n</i> more slots at the end of the queue
+	 * 
+	 * @param n
+	 */
+	private void ensureCapacity(int n) {
+		int size = this.tail - this.head;
+		if (this.tail + n <= this.buffers.length) {
+			return;
+		}
+		int capacity = this.buffers.length;
+		while (size + n > capacity) {
+			capacity <<= 1;
+		}
+		ByteBuffer newBuffers[] = capacity == this.buffers.length ? this.buffers
+				: new ByteBuffer[capacity];
+		FileTransfer newTransfers[] = capacity == this.buffers.length ? this.transfers
+				: new FileTransfer[capacity];
+		boolean newEnds[] = capacity == this.buffers.length ? this.ends : new boolean[capacity];
+		long newStarts[] = capacity == this.buffers.length ? this.starts : new long[capacity];
+		// Move the pending slots to the beginning of the arrays
+		System.arraycopy(this.buffers, this.head, newBuffers, 0, size);
+		System.arraycopy(this.transfers, this.head, newTransfers, 0, size);
+		System.arraycopy(this.ends, this.head, newEnds, 0, size);
+		System.arraycopy(this.starts, this.head, newStarts, 0, size);
+		for (int i = size; i < this.tail; i++) {
+			newBuffers[i] = null;
+			newTransfers[i] = null;
+			newEnds[i] = false;
+			newStarts[i] = 0;
+		}
+		this.buffers = newBuffers;
+		this.transfers = newTransfers;
+		this.ends = newEnds;
+		this.starts = newStarts;
+		this.head = 0;
+		this.tail = size;
 	}
 
 	/**
-	 * Setter for the offset
+	 * Called by the read side once it handled the requests it read. If
+	 * responses are still pending, the writes are resumed. If the limit of
+	 * outstanding responses or the high water mark is reached, the reads are
+	 * suspended until the queue drains, and if the global budget is exhausted
+	 * they are suspended until bytes are released.
 	 * 
-	 * @param offset
-	 *            the offset to set
+	 * @param channel
+	 *            the channel
+	 * @param buffered
+	 *            <tt>true</tt> if unhandled requests remain in the read
+	 *            buffer
 	 */
-	public void setOffset(int offset) {
-		this.offset = offset;
+	public synchronized void afterRead(StreamChannel channel, boolean buffered) {
+		boolean full = isQueueFull();
+		if (full || this.budget.isExhausted()) {
+			channel.suspendReads();
+			this.readsSuspended = true;
+			this.wakeupReads = buffered;
+			if (!full) {
+				awaitBudget(channel);
+			}
+		}
+		if (hasQueued()) {
+			channel.resumeWrites();
+			watchWrites(channel);
+		}
 	}
 
 	/**
-	 * Getter for total
+	 * Suspend the reads of the connection until the pending responses are
+	 * sent, whatever the number of outstanding responses.
 	 * 
-	 * @return the total
+	 * @param channel
+	 *            the channel
+	 * @param buffered
+	 *            <tt>true</tt> if unhandled bytes remain in the read buffer
 	 */
-	public long getTotal() {
-		return this.total;
+	public synchronized void holdReads(StreamChannel channel, boolean buffered) {
+		if (!hasQueued()) {
+			return;
+		}
+		channel.suspendReads();
+		this.readsSuspended = true;
+		this.wakeupReads = buffered;
+		channel.resumeWrites();
+		watchWrites(channel);
 	}
 
 	/**
-	 * Setter for the total
+	 * Arm the stalled write timeout, on the timer wheel of the write thread,
+	 * if it is not armed yet
 	 * 
-	 * @param total
-	 *            the total to set
+	 * @param channel
 	 */
-	public void setTotal(long total) {
-		this.total = total;
+	private void watchWrites(final StreamChannel channel) {
+		if (XnioUtils.WRITE_TIMEOUT <= 0 || this.watching) {
+			return;
+		}
+		if (this.timeout == null) {
+			this.wheel = TimerWheel.get(channel.getWriteThread());
+			this.timeout = new TimerWheel.Timeout() {
+				@Override
+				protected void expire() {
+					writeTimedOut(channel);
+				}
+			};
+		}
+		this.watching = true;
+		this.lastProgress = System.currentTimeMillis();
+		this.wheel.schedule(this.timeout, XnioUtils.WRITE_TIMEOUT, TimeUnit.MILLISECONDS);
 	}
 
 	/**
-	 * Getter for sessionId
+	 * Close the connection if the pending responses didn't progress since the
+	 * timeout was armed, else wait for the time remaining since the last
+	 * progress.
 	 * 
-	 * @return the sessionId
+	 * @param channel
+	 */
+	private void writeTimedOut(StreamChannel channel) {
+		if (isWriteTimedOut(channel)) {
+			IoUtils.safeClose(channel);
+		}
+	}
+
+	/**
+	 * @param channel
+	 * @return <tt>true</tt> if the pending responses were abandoned and the
+	 *         channel must be closed
+	 */
+	private synchronized boolean isWriteTimedOut(StreamChannel channel) {
+		this.watching = false;
+		if (!hasQueued() || !channel.isOpen()) {
+			return false;
+		}
+		long idle = System.currentTimeMillis() - this.lastProgress;
+		if (idle >= XnioUtils.WRITE_TIMEOUT) {
+			logger.warnf("Write timed out [%s] with %s outstanding responses", this.session,
+					this.outstanding);
+			reset();
+			return true;
+		}
+		this.watching = true;
+		this.wheel.schedule(this.timeout, XnioUtils.WRITE_TIMEOUT - idle, TimeUnit.MILLISECONDS);
+		return false;
+	}
+
+	/**
+	 * Release the queued responses
+	 */
+	public synchronized void reset() {
+		for (int i = this.head; i < this.tail; i++) {
+			if (this.transfers[i] != null) {
+				this.transfers[i].release();
+			}
+			this.transfers[i] = null;
+			this.buffers[i] = null;
+			this.ends[i] = false;
+			this.starts[i] = 0;
+		}
+		this.head = this.tail = 0;
+		this.sslPending = false;
+		this.outstanding = 0;
+		this.budget.release(this.pendingBytes);
+		this.metrics.outboundReleased(this.pendingBytes);
+		this.pendingBytes = 0;
+		this.readsSuspended = false;
+		this.wakeupReads = false;
+		if (this.watching) {
+			this.watching = false;
+			this.wheel.cancel(this.timeout);
+		}
+	}
+
+	/**
+	 * @return <tt>true</tt> if bytes are waiting to be written
+	 */
+	public synchronized boolean isPending() {
+		return hasQueued();
+	}
+
+	/**
+	 * @return <tt>true</tt> if queued bytes or encrypted records are waiting
+	 *         to be written
+	 */
+	private boolean hasQueued() {
+		return this.head < this.tail || this.sslPending;
+	}
+
+	/**
+	 * @return <tt>true</tt> if no more response may be queued before the
+	 *         queue drains
+	 */
+	public synchronized boolean isFull() {
+		return isQueueFull() || this.budget.isExhausted();
+	}
+
+	/**
+	 * @return <tt>true</tt> if the limit of outstanding responses or the high
+	 *         water mark is reached
+	 */
+	private boolean isQueueFull() {
+		return this.outstanding >= this.maxOutstanding || this.pendingBytes >= this.highWater;
+	}
+
+	/**
+	 * @return the number of queued bytes not sent yet
+	 */
+	public synchronized long getPendingBytes() {
+		return this.pendingBytes;
+	}
+
+	/**
+	 * @return the number of responses not completely written yet
+	 */
+	public synchronized int getOutstanding() {
+		return this.outstanding;
+	}
+
+	/**
+	 * @return the maximum number of outstanding responses
+	 */
+	public int getMaxOutstanding() {
+		return this.maxOutstanding;
+	}
+
+	/**
+	 * @return the ID of the session of the connection
 	 */
 	public String getSessionId() {
-		return this.sessionId;
+		return this.session.getId();
+	}
+
+	/**
+	 * Getter for session
+	 * 
+	 * @return the session
+	 */
+	public Session getSession() {
+		return this.session;
 	}
 
 	/**
-	 * Setter for the sessionId
+	 * Setter for the session
 	 * 
-	 * @param sessionId
-	 *            the sessionId to set
+	 * @param session
+	 *            the session to set
 	 */
-	public void setSessionId(String sessionId) {
-		this.sessionId = sessionId;
+	public void setSession(Session session) {
+		this.session = session;
 	}
 }
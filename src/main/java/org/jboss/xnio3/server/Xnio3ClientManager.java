@@ -22,31 +22,92 @@
 package org.jboss.xnio3.server;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.jboss.logging.Logger;
 import org.xnio.channels.StreamChannel;
 
 /**
  * {@code Xnio3ClientManager}
  * 
+ * A blocking, thread-per-connection handler of the same protocol as the
+ * {@link ReadChannelListener}: the greeting line is answered with the
+ * <i>jSessionId</i> and each request with the payload it names. The reads
+ * and writes go through a {@link BlockingChannelAdapter}, so a handler
+ * waiting for its client parks instead of blocking an OS thread in a
+ * selector. On a JVM with virtual threads the handlers run on virtual threads
+ * (see {@link #createExecutor()}) and tens of thousands of clients don't
+ * need as many OS threads.
+ * 
+ * The handlers take their buffers from the shared pools, not from per-thread
+ * magazines, since their threads end with their connections.
+ * 
+ * The blocking handlers are used instead of the listeners when
+ * <i>XnioUtils.BLOCKING_HANDLERS</i> is enabled. They neither negotiate the
+ * compression nor support TLS.
+ * 
  * Created on Nov 10, 2011 at 4:25:31 PM
  * 
  * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
  */
 public class Xnio3ClientManager implements Runnable {
 
-	private StreamChannel channel;
-	private static final Logger logger = Logger.getLogger(Xnio3ClientManager.class.getName());
-	private String sessionId;
+	private static final SizeClassBufferPool pool = SizeClassBufferPool.getDefault();
+	private static final AsyncLogger logger = AsyncLogger.getLogger(Xnio3ClientManager.class);
+	private final BlockingChannelAdapter channel;
+	private final Metrics metrics = Metrics.getInstance();
+	private final AdaptiveBufferSizer sizer = new AdaptiveBufferSizer();
+	private final RequestDecoder decoder = new RequestDecoder(XnioUtils.FRAMING,
+			AdaptiveBufferSizer.getMaxReadSize());
+	private final RequestDecoder helloDecoder = new RequestDecoder(
+			RequestDecoder.Framing.DELIMITER);
+	private Session session;
+	private IoThreadLoad load;
 
 	/**
 	 * Create a new instance of {@code Xnio3ClientManager}
 	 * 
 	 * @param channel
+	 *            the accepted channel, its reads and writes suspended
 	 */
 	public Xnio3ClientManager(StreamChannel channel) {
-		this.channel = channel;
+		this.channel = new BlockingChannelAdapter(channel);
+	}
+
+	/**
+	 * Create the executor running the handlers: a virtual thread per task if
+	 * the JVM supports them (and <i>XnioUtils.VIRTUAL_THREADS</i> is enabled),
+	 * else a cached pool of daemon threads. The virtual thread executor is
+	 * looked up by reflection, the server is built for older JVMs.
+	 * 
+	 * @return a new executor
+	 */
+	public static ExecutorService createExecutor() {
+		if (XnioUtils.VIRTUAL_THREADS) {
+			try {
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				ExecutorService executor = (ExecutorService) method.invoke(null);
+				logger.info("The client managers run on virtual threads");
+				return executor;
+			} catch (NoSuchMethodException e) {
+				logger.info("Virtual threads are not available, "
+						+ "the client managers run on platform threads");
+			} catch (Exception e) {
+				logger.errorf(e, "Virtual threads can't be used: %s", e.getMessage());
+			}
+		}
+		final AtomicInteger counter = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "client-manager-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 
 	/*
@@ -55,85 +116,163 @@ public class Xnio3ClientManager implements Runnable {
 	 * @see java.lang.Runnable#run()
 	 */
 	public void run() {
-		ByteBuffer bb = ByteBuffer.allocate(1024);
-		String response = null;
+		ByteBuffer bb = null;
 		try {
-			// Initialization of the communication
-			bb.clear();
-			int nBytes = channel.read(bb);
-			bb.flip();
-			byte bytes[] = new byte[nBytes];
-			bb.get(bytes);
-			System.out.println("[" + this.sessionId + "] " + new String(bytes).trim());
-			response = "jSessionId: " + this.sessionId + "\n";
-			// write initialization response to client
-			this.write(bb, response);
-			bb.clear();
-			do {
-				nBytes = channel.read(bb);
-				if (nBytes > 0) {
-					bb.flip();
-					bytes = new byte[nBytes];
-					bb.get(bytes);
-					response = "[" + this.sessionId + "] Pong from server\n";
-					System.out.println("[" + this.sessionId + "] " + new String(bytes).trim());
-					// write response to client
-					this.write(bb, response);
-					bb.clear();
+			boolean ready = false;
+			for (;;) {
+				if (bb == null) {
+					// Wait for the next message without holding a buffer
+					this.channel.awaitReadable();
+					bb = pool.acquireUncached(this.sizer.getReadSize());
 				}
-			} while (channel.isOpen());
-
+				int nBytes = this.channel.read(bb);
+				if (nBytes < 0) {
+					break;
+				}
+				this.sizer.recordRead(nBytes, !bb.hasRemaining());
+				this.session.touch();
+				this.metrics.bytesRead(nBytes);
+				bb.flip();
+				if (!ready && helloDecoder.decode(bb)) {
+					logger.debugf("[%s] hello", this.session);
+					write("jSessionId: " + this.session.getId() + XnioUtils.CRLF);
+					ready = true;
+				}
+				while (ready && decoder.decode(bb)) {
+					this.metrics.requestReceived();
+					long start = System.nanoTime();
+					writeResponse(resolve(bb));
+					this.metrics.responseSent(start);
+				}
+				bb.compact();
+				if (bb.position() == 0) {
+					pool.restituteUncached(bb);
+					bb = null;
+				} else if (!bb.hasRemaining()) {
+					// an incomplete request fills the buffer
+					bb = grow(bb);
+				}
+			}
 		} catch (Exception exp) {
-			logger.error("ERROR from client side");
+			if (this.channel.getChannel().isOpen()) {
+				logger.errorf(exp, "Exception: %s", exp.getMessage());
+				this.metrics.error();
+			}
 		} finally {
-			try {
-				this.close();
-			} catch (IOException ex) {
-				logger.error("ERROR from server side", ex);
+			if (bb != null) {
+				pool.restituteUncached(bb);
 			}
+			this.close();
+			// the thread ends with the connection, no buffer may stay in its
+			// magazines
+			pool.flushThreadCaches();
 		}
-		logger.infov("Client Manager shutdown");
 	}
 
 	/**
+	 * Move the bytes of a full read buffer to a larger one
 	 * 
 	 * @param bb
-	 * @param response
+	 *            the full read buffer
+	 * @return the new read buffer
 	 * @throws IOException
+	 *             if the buffer can't grow
 	 */
-	protected int write(ByteBuffer bb, String response) throws IOException {
-		bb.clear();
-		bb.put(response.getBytes());
+	private ByteBuffer grow(ByteBuffer bb) throws IOException {
+		int size = this.sizer.grow(bb.capacity());
+		if (size < 0) {
+			throw new IOException("Request too large");
+		}
+		ByteBuffer buffer = pool.acquireUncached(size);
 		bb.flip();
-		return channel.write(bb);
+		buffer.put(bb);
+		pool.restituteUncached(bb);
+		return buffer;
+	}
+
+	/**
+	 * @param bb
+	 *            the read buffer holding the last decoded request
+	 * @return the path of the file named by the request
+	 */
+	private String resolve(ByteBuffer bb) {
+		String path = ContentIndex.getInstance().lookup(bb, decoder.getStart(),
+				decoder.getEnd());
+		return path != null ? path : XnioUtils.DATA_FILE;
 	}
 
 	/**
+	 * Send the payload of the file, blocking until it is written
 	 * 
+	 * @param path
+	 *            the path of the file
 	 * @throws IOException
 	 */
-	public void close() throws IOException {
-		logger.infov("Closing remote connection");
-		this.channel.close();
+	protected void writeResponse(String path) throws IOException {
+		if (XnioUtils.RESPONSE_MODE == ResponseMode.TRANSFER) {
+			FileTransfer transfer = FileTransfer.create(path);
+			try {
+				while (!transfer.transfer(this.channel.getChannel())) {
+					this.channel.awaitWritable();
+				}
+				this.metrics.bytesWritten(transfer.getTransferred());
+			} finally {
+				transfer.release();
+			}
+			return;
+		}
+		Payload payload = XnioUtils.RESPONSE_MODE == ResponseMode.MAPPED ? MappedContentStore
+				.getInstance().get(path) : ContentCache.getInstance().get(path);
+		this.metrics.bytesWritten(this.channel.write(payload.getBuffers()));
 	}
 
 	/**
-	 * Getter for sessionId
 	 * 
-	 * @return the sessionId
+	 * @param response
+	 * @throws IOException
+	 */
+	protected void write(String response) throws IOException {
+		this.metrics.bytesWritten(this.channel.write(new ByteBuffer[] { ByteBuffer
+				.wrap(response.getBytes()) }));
+	}
+
+	/**
+	 * Close the connection and release its session
+	 */
+	public void close() {
+		this.channel.close();
+		Xnio3Server.sessions.unregister(this.session);
+		if (this.load != null) {
+			this.load.closed();
+		}
+		this.metrics.connectionClosed();
+		ConnectionLog.closed(this.session, Xnio3Server.sessions.getSize());
+	}
+
+	/**
+	 * @return the ID of the session of the connection
 	 */
 	public String getSessionId() {
-		return this.sessionId;
+		return this.session.getId();
 	}
 
 	/**
-	 * Setter for the sessionId
+	 * Setter for the session
 	 * 
-	 * @param sessionId
-	 *            the sessionId to set
+	 * @param session
+	 *            the session to set
 	 */
-	public void setSessionId(String sessionId) {
-		this.sessionId = sessionId;
+	public void setSession(Session session) {
+		this.session = session;
 	}
 
+	/**
+	 * Setter for the load
+	 * 
+	 * @param load
+	 *            the load of the read thread of the connection
+	 */
+	public void setLoad(IoThreadLoad load) {
+		this.load = load;
+	}
 }
@@ -22,16 +22,17 @@
 package org.jboss.xnio3.server;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.SSLContext;
 
-import org.jboss.logging.Logger;
 import org.xnio.ChannelListener;
 import org.xnio.ChannelListeners;
+import org.xnio.IoUtils;
 import org.xnio.Option;
 import org.xnio.OptionMap;
 import org.xnio.Options;
@@ -50,8 +51,14 @@ import org.xnio.channels.StreamChannel;
  */
 public class Xnio3Server {
 
-	private static final Logger logger = Logger.getLogger(Xnio3Server.class.getName());
-	protected static AtomicInteger counter = new AtomicInteger();
+	private static final AsyncLogger logger = AsyncLogger.getLogger(Xnio3Server.class);
+	protected static final SessionRegistry sessions = SessionRegistry.getInstance();
+	private static final SessionIdGenerator sessionIdGenerator = createSessionIdGenerator(XnioUtils.SESSION_ID_GENERATOR);
+	// the TLS context and options, when the connections are secured
+	private static SSLContext sslContext;
+	private static OptionMap sslOptions;
+	// the executor of the blocking handlers, when they are enabled
+	private static ExecutorService executor;
 
 	/**
 	 * @param args
@@ -67,7 +74,32 @@ public class Xnio3Server {
 			}
 		}
 
-		logger.infov("Starting XNIO3 Server on port {0} ...", port);
+		logger.infof("Starting XNIO3 Server on port %s ...", port);
+		// Index the resources the requests can name
+		ContentIndex.load(XnioUtils.DATA_DIR);
+		if (XnioUtils.RESPONSE_MODE == ResponseMode.BUFFER || !XnioUtils.COMPRESSION.isEmpty()) {
+			// Load the payloads and compress their variants before accepting
+			// connections
+			ContentCache.getInstance().preload(XnioUtils.DATA_DIR);
+		}
+		if (XnioUtils.RESPONSE_MODE == ResponseMode.MAPPED) {
+			// Map the content directory before accepting connections
+			MappedContentStore.getInstance().preload(XnioUtils.DATA_DIR);
+		}
+		if (XnioUtils.SSL_KEYSTORE != null) {
+			sslOptions = SslConnection.createOptions();
+			sslContext = SslConnection.createContext(sslOptions);
+			logger.infof("TLS enabled with the keystore %s", XnioUtils.SSL_KEYSTORE);
+		}
+		if (XnioUtils.BLOCKING_HANDLERS) {
+			if (sslContext != null) {
+				throw new IllegalArgumentException("TLS is not supported by the blocking handlers");
+			}
+			executor = Xnio3ClientManager.createExecutor();
+		}
+		// Evict the idle sessions
+		sessions.start();
+		Metrics.getInstance().start();
 		// Get the Xnio instance
 		final Xnio xnio = Xnio.getInstance("nio", Xnio3Server.class.getClassLoader());
 
@@ -85,9 +117,15 @@ public class Xnio3Server {
 		// configure the number of worker task max threads
 		worker.setOption(Options.WORKER_TASK_MAX_THREADS, 510);
 
+		// The listening socket is registered with the selectors of the
+		// acceptor threads, any of them may accept a pending connection
+		int acceptThreads = XnioUtils.ACCEPT_THREADS > 0 ? Math.min(XnioUtils.ACCEPT_THREADS,
+				cores) : cores;
+		logger.infof("Number of acceptor threads %s", acceptThreads);
 		final AcceptingChannel<? extends ConnectedStreamChannel> server = worker
-				.createStreamServer(address, acceptListener,
-						OptionMap.create(Options.REUSE_ADDRESSES, Boolean.TRUE));
+				.createStreamServer(address, acceptListener, OptionMap.create(
+						Options.REUSE_ADDRESSES, Boolean.TRUE, Options.WORKER_ACCEPT_THREADS,
+						acceptThreads));
 		server.resumeAccepts();
 	}
 
@@ -97,30 +135,50 @@ public class Xnio3Server {
 	 * @return a random and unique session ID
 	 */
 	public static String generateSessionId() {
-		UUID uuid = UUID.randomUUID();
-		return uuid.toString();
+		return sessionIdGenerator.nextId();
 	}
 
 	/**
+	 * Create the session ID generator
 	 * 
-	 * @param channel
-	 * @param sessionId
-	 * @throws IOException
+	 * @param name
+	 *            <i>fast</i>, <i>secure</i> or the name of a class implementing
+	 *            {@link SessionIdGenerator}
+	 * @return a new session ID generator
+	 */
+	protected static SessionIdGenerator createSessionIdGenerator(String name) {
+		if ("fast".equalsIgnoreCase(name)) {
+			return new FastSessionIdGenerator();
+		}
+		if ("secure".equalsIgnoreCase(name)) {
+			return new SecureSessionIdGenerator();
+		}
+		try {
+			return Class.forName(name, true, Xnio3Server.class.getClassLoader())
+					.asSubclass(SessionIdGenerator.class).getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			throw invalidSessionIdGenerator(name, e);
+		} catch (ClassCastException e) {
+			throw invalidSessionIdGenerator(name, e);
+		} catch (NoSuchMethodException e) {
+			throw invalidSessionIdGenerator(name, e);
+		} catch (InstantiationException e) {
+			throw invalidSessionIdGenerator(name, e);
+		} catch (IllegalAccessException e) {
+			throw invalidSessionIdGenerator(name, e);
+		} catch (InvocationTargetException e) {
+			throw invalidSessionIdGenerator(name, e.getCause());
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of the session ID generator
+	 * @param cause
+	 * @return the exception reporting an invalid session ID generator
 	 */
-	protected static void initSession(StreamChannel channel, String sessionId) throws IOException {
-		ByteBuffer buffer = ByteBuffer.allocate(512);
-		buffer.clear();
-		int nBytes = channel.read(buffer);
-		buffer.flip();
-		byte bytes[] = new byte[nBytes];
-		buffer.get(bytes);
-		System.out.println("[" + sessionId + "] " + new String(bytes).trim());
-		String response = "jSessionId: " + sessionId + XnioUtils.CRLF;
-		// write initialization response to client
-		buffer.clear();
-		buffer.put(response.getBytes());
-		buffer.flip();
-		channel.write(buffer);
+	private static IllegalArgumentException invalidSessionIdGenerator(String name, Throwable cause) {
+		return new IllegalArgumentException("Invalid session ID generator: " + name, cause);
 	}
 
 	/**
@@ -139,28 +197,57 @@ public class Xnio3Server {
 		 */
 		public void handleEvent(Channel channel) {
 
-			logger.infof("New connection accepted -> total number of connections : %s",
-					counter.incrementAndGet());
 			final StreamChannel streamChannel = (StreamChannel) channel;
-			String sessionId = generateSessionId();
+			Session session = new Session(generateSessionId(), streamChannel);
+			if (!sessions.register(session)) {
+				Metrics.getInstance().error();
+				ConnectionLog.refused(sessions.getSize());
+				IoUtils.safeClose(streamChannel);
+				return;
+			}
+			Metrics.getInstance().connectionAccepted();
+			ConnectionLog.accepted(session, sessions.getSize());
+			IoThreadLoad.accepted();
+			IoThreadLoad load = IoThreadLoad.get(streamChannel.getReadThread());
 			try {
-				// Fix the size of the send buffer to 8KB
-				streamChannel.setOption(Options.SEND_BUFFER, 8 * 1024);
-				initSession(streamChannel, sessionId);
+				// The send buffer grows with the payloads served by the connection
+				streamChannel.setOption(Options.SEND_BUFFER, XnioUtils.SEND_BUFFER_MIN);
+				if (executor != null) {
+					// The handler owns the connection from now on
+					Xnio3ClientManager manager = new Xnio3ClientManager(streamChannel);
+					manager.setSession(session);
+					manager.setLoad(load);
+					load.opened();
+					executor.execute(manager);
+					return;
+				}
+				if (sslContext != null) {
+					session.setSsl(new SslConnection(SslConnection.createEngine(sslContext,
+							sslOptions)));
+				}
 				ReadChannelListener readListener = new ReadChannelListener();
-				readListener.setSessionId(sessionId);
+				readListener.setSession(session);
+				WriteChannelListener writeListener = new WriteChannelListener(
+						XnioUtils.MAX_OUTSTANDING_RESPONSES);
+				writeListener.setSession(session);
+				readListener.setWriteListener(writeListener);
 				CloseChannelListener closeListener = new CloseChannelListener();
-				closeListener.sessionId = sessionId;
-				// WriteChannelListener writeListener = new
-				// WriteChannelListener();
-				// writeListener.setSessionId(sessionId);
+				closeListener.session = session;
+				closeListener.writeListener = writeListener;
+				closeListener.readListener = readListener;
+				closeListener.load = load;
 
 				streamChannel.getReadSetter().set(readListener);
-				// streamChannel.getWriteSetter().set(writeListener);
+				streamChannel.getWriteSetter().set(writeListener);
+				// the close listener releases the connection from now on
+				load.opened();
 				streamChannel.getCloseSetter().set(closeListener);
-				streamChannel.resumeReads();
+				// The handshake is driven by the read and write listeners
+				readListener.startHandshake(streamChannel);
 			} catch (IOException e) {
-				e.printStackTrace();
+				logger.errorf(e, "Exception: %s", e.getMessage());
+				sessions.unregister(session);
+				IoUtils.safeClose(streamChannel);
 				return;
 			}
 		}
@@ -175,7 +262,10 @@ public class Xnio3Server {
 	 */
 	protected static class CloseChannelListener implements ChannelListener<StreamChannel> {
 
-		private String sessionId;
+		private Session session;
+		private WriteChannelListener writeListener;
+		private ReadChannelListener readListener;
+		private IoThreadLoad load;
 
 		/*
 		 * (non-Javadoc)
@@ -183,9 +273,16 @@ public class Xnio3Server {
 		 * @see org.xnio.ChannelListener#handleEvent(java.nio.channels.Channel)
 		 */
 		public void handleEvent(StreamChannel channel) {
-			logger.infof(
-					"Closing remote connection for session: [%s] -> number of remaining connections %s",
-					sessionId, counter.decrementAndGet());
+			// Release the resources of a pending response if any
+			writeListener.reset();
+			readListener.release();
+			if (session.getSsl() != null) {
+				session.getSsl().release();
+			}
+			sessions.unregister(session);
+			load.closed();
+			Metrics.getInstance().connectionClosed();
+			ConnectionLog.closed(session, sessions.getSize());
 		}
 	}
 }
@@ -21,7 +21,9 @@
  */
 package org.jboss.xnio3.server;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.EnumSet;
 
 /**
  * {@code XnioUtils}
@@ -44,6 +46,273 @@ public final class XnioUtils {
 	 * The default server port
 	 */
 	public static final int SERVER_PORT = 8080;
+	/**
+	 * The directory of the files served by the server
+	 */
+	public static final String DATA_DIR = System.getProperty("org.jboss.xnio3.data.dir", "data");
+	/**
+	 * The path of the file sent back to clients when the request doesn't name
+	 * a resource of <i>DATA_DIR</i>
+	 */
+	public static final String DATA_FILE = System.getProperty("org.jboss.xnio3.data.file", DATA_DIR
+			+ File.separatorChar + "file.txt");
+	/**
+	 * The way the payload is sent back to clients (<i>buffer</i>,
+	 * <i>transfer</i> or <i>mapped</i>)
+	 */
+	public static final ResponseMode RESPONSE_MODE = ResponseMode.parse(
+			System.getProperty("org.jboss.xnio3.response.mode"), ResponseMode.BUFFER);
+	/**
+	 * The maximum number of bytes kept by the shared {@link ContentCache}
+	 */
+	public static final long CONTENT_CACHE_MAX_SIZE = Long.getLong(
+			"org.jboss.xnio3.cache.maxSize", ContentCache.DEFAULT_MAX_SIZE);
+	/**
+	 * Files smaller than this threshold are not memory-mapped by the
+	 * {@link MappedContentStore}
+	 */
+	public static final int MAPPING_THRESHOLD = Integer.getInteger(
+			"org.jboss.xnio3.mapping.threshold", MappedContentStore.DEFAULT_MAPPING_THRESHOLD);
+
+	/**
+	 * The encodings of the precompressed payload variants built by the
+	 * {@link ContentCache} (comma separated, e.g. <i>gzip,deflate</i>), empty
+	 * to disable the compression
+	 */
+	public static final EnumSet<ContentEncoding> COMPRESSION = ContentEncoding.parseAll(System
+			.getProperty("org.jboss.xnio3.compression", "gzip,deflate"));
+	/**
+	 * The compression level (0-9) of the payload variants, the payloads are
+	 * only compressed once, when the server starts
+	 */
+	public static final int COMPRESSION_LEVEL = Integer.getInteger(
+			"org.jboss.xnio3.compression.level", 6);
+
+	/**
+	 * The maximum number of buffers of each size class of the shared
+	 * {@link SizeClassBufferPool}, the larger classes are further limited by
+	 * <i>BUFFER_POOL_MAX_BYTES</i>
+	 */
+	public static final int BUFFER_POOL_MAX_ITEMS = Integer.getInteger(
+			"org.jboss.xnio3.pool.maxItems", 16 * 1024);
+	/**
+	 * The maximum number of bytes allocated by the shared
+	 * {@link SizeClassBufferPool}, shared evenly by its size classes. It must
+	 * stay under the <i>-XX:MaxDirectMemorySize</i> of the JVM when the pool
+	 * hands out direct buffers.
+	 */
+	public static final long BUFFER_POOL_MAX_BYTES = Long.getLong("org.jboss.xnio3.pool.maxBytes",
+			64L * 1024 * 1024);
+	/**
+	 * Whether the shared {@link SizeClassBufferPool} hands out direct buffers
+	 */
+	public static final boolean BUFFER_POOL_DIRECT = Boolean.valueOf(System.getProperty(
+			"org.jboss.xnio3.pool.direct", "true"));
+	/**
+	 * Track one pooled buffer acquisition out of this interval to detect
+	 * leaks, 0 disables the leak detection
+	 */
+	public static final int LEAK_DETECTION_INTERVAL = Integer.getInteger(
+			"org.jboss.xnio3.pool.leakDetection", 0);
+	/**
+	 * The initial size of the buffers the requests are read into
+	 */
+	public static final int READ_BUFFER_SIZE = 512;
+	/**
+	 * Whether the read buffers and the socket send buffers are sized per
+	 * connection by the {@link AdaptiveBufferSizer}, else they keep their
+	 * initial size
+	 */
+	public static final boolean ADAPTIVE_SIZING = Boolean.valueOf(System.getProperty(
+			"org.jboss.xnio3.sizing.adaptive", "true"));
+	/**
+	 * The minimum size of the read buffers
+	 */
+	public static final int READ_BUFFER_MIN = Integer.getInteger("org.jboss.xnio3.sizing.read.min",
+			512);
+	/**
+	 * The maximum size of the read buffers, i.e. of a request (at most the
+	 * largest size class of the {@link SizeClassBufferPool})
+	 */
+	public static final int READ_BUFFER_MAX = Integer.getInteger("org.jboss.xnio3.sizing.read.max",
+			64 * 1024);
+	/**
+	 * The initial size of the socket send buffers
+	 */
+	public static final int SEND_BUFFER_MIN = Integer.getInteger("org.jboss.xnio3.sizing.send.min",
+			8 * 1024);
+	/**
+	 * The maximum size of the socket send buffers
+	 */
+	public static final int SEND_BUFFER_MAX = Integer.getInteger("org.jboss.xnio3.sizing.send.max",
+			256 * 1024);
+	/**
+	 * The way the requests are delimited (<i>delimiter</i> or
+	 * <i>length_prefixed</i>)
+	 */
+	public static final RequestDecoder.Framing FRAMING = RequestDecoder.Framing.parse(
+			System.getProperty("org.jboss.xnio3.framing"), RequestDecoder.Framing.DELIMITER);
+
+	/**
+	 * Whether all the requests available in the read buffer are decoded before
+	 * their responses are flushed with a single gathering write
+	 */
+	public static final boolean PIPELINING = Boolean.getBoolean("org.jboss.xnio3.pipelining");
+	/**
+	 * The maximum number of responses queued by a connection before its reads
+	 * are suspended (only used when pipelining, otherwise a connection has at
+	 * most one outstanding response)
+	 */
+	public static final int MAX_OUTSTANDING_RESPONSES = PIPELINING ? Integer.getInteger(
+			"org.jboss.xnio3.pipelining.maxOutstanding", 16) : 1;
+
+	/**
+	 * The number of queued response bytes above which a connection stops
+	 * reading requests
+	 */
+	public static final int OUTBOUND_HIGH_WATER = Integer.getInteger(
+			"org.jboss.xnio3.outbound.highWater", 256 * 1024);
+	/**
+	 * The number of queued response bytes below which a connection stopped by
+	 * the high water mark reads requests again
+	 */
+	public static final int OUTBOUND_LOW_WATER = Integer.getInteger(
+			"org.jboss.xnio3.outbound.lowWater", 64 * 1024);
+	/**
+	 * The maximum number of response bytes queued by all the connections, 0
+	 * for no limit
+	 */
+	public static final long OUTBOUND_BUDGET = Long.getLong("org.jboss.xnio3.outbound.budget", 0);
+	/**
+	 * The maximum time (in milliseconds) a new connection may take to complete
+	 * the session handshake before it is closed
+	 */
+	public static final long HANDSHAKE_TIMEOUT = Long.getLong("org.jboss.xnio3.handshake.timeout",
+			10000);
+
+	/**
+	 * The time (in milliseconds) after which a ready connection without any
+	 * activity and without pending response is closed (0 to disable it)
+	 */
+	public static final long READ_TIMEOUT = Long.getLong("org.jboss.xnio3.timeout.read", 0);
+	/**
+	 * The time (in milliseconds) after which a connection whose pending
+	 * response doesn't progress is closed (0 to disable it)
+	 */
+	public static final long WRITE_TIMEOUT = Long.getLong("org.jboss.xnio3.timeout.write", 60000);
+	/**
+	 * The duration (in milliseconds) of a tick of the {@link TimerWheel}s,
+	 * i.e. the precision of the timeouts
+	 */
+	public static final long TIMER_TICK = Long.getLong("org.jboss.xnio3.timer.tick", 100);
+	/**
+	 * The session ID generator: <i>fast</i> (the default), <i>secure</i> or
+	 * the name of a class implementing {@link SessionIdGenerator}
+	 */
+	public static final String SESSION_ID_GENERATOR = System.getProperty(
+			"org.jboss.xnio3.session.generator", "fast");
+
+	/**
+	 * The maximum number of sessions, the connections accepted beyond it are
+	 * refused (0 for no limit)
+	 */
+	public static final int SESSION_MAX_COUNT = Integer.getInteger("org.jboss.xnio3.session.max", 0);
+	/**
+	 * The time (in milliseconds) after which a session without any activity
+	 * is closed and evicted (0 to keep idle sessions)
+	 */
+	public static final long SESSION_IDLE_TIMEOUT = Long.getLong(
+			"org.jboss.xnio3.session.idleTimeout", 10 * 60 * 1000);
+
+	/**
+	 * Whether the messages are logged by a background thread (see
+	 * {@link AsyncLogger})
+	 */
+	public static final boolean LOG_ASYNC = Boolean.valueOf(System.getProperty(
+			"org.jboss.xnio3.log.async", "true"));
+	/**
+	 * The number of messages the asynchronous logger can hold before dropping
+	 * messages
+	 */
+	public static final int LOG_BUFFER_SIZE = Integer.getInteger("org.jboss.xnio3.log.bufferSize",
+			8192);
+	/**
+	 * The minimum time (in milliseconds) between two summaries of the
+	 * connections
+	 */
+	public static final long LOG_SUMMARY_INTERVAL = Long.getLong(
+			"org.jboss.xnio3.log.summaryInterval", 5000);
+
+	/**
+	 * Whether the {@link Metrics} are exposed as an MBean
+	 */
+	public static final boolean METRICS_JMX = Boolean.valueOf(System.getProperty(
+			"org.jboss.xnio3.metrics.jmx", "true"));
+	/**
+	 * The interval (in milliseconds) between two dumps of the {@link Metrics}
+	 * to the log, 0 to disable the dumps
+	 */
+	public static final long METRICS_DUMP_INTERVAL = Long.getLong(
+			"org.jboss.xnio3.metrics.dumpInterval", 0);
+
+	/**
+	 * The number of I/O threads accepting connections, 0 for all the read
+	 * threads
+	 */
+	public static final int ACCEPT_THREADS = Integer.getInteger("org.jboss.xnio3.accept.threads",
+			1);
+
+	/**
+	 * The keystore holding the key and the certificate of the server, the
+	 * connections are only secured with TLS when it is set
+	 */
+	public static final String SSL_KEYSTORE = System.getProperty("org.jboss.xnio3.ssl.keystore");
+	/**
+	 * The password of the keystore and of its key
+	 */
+	public static final String SSL_KEYSTORE_PASSWORD = System.getProperty(
+			"org.jboss.xnio3.ssl.keystore.password", "changeit");
+	/**
+	 * The type of the keystore (<i>JKS</i>, <i>PKCS12</i>, ...)
+	 */
+	public static final String SSL_KEYSTORE_TYPE = System.getProperty(
+			"org.jboss.xnio3.ssl.keystore.type", "JKS");
+	/**
+	 * The protocol of the {@code SSLContext}
+	 */
+	public static final String SSL_PROTOCOL = System.getProperty("org.jboss.xnio3.ssl.protocol",
+			"TLS");
+	/**
+	 * The protocols enabled on the connections (comma separated, e.g.
+	 * <i>TLSv1.2</i>), the provider defaults when not set
+	 */
+	public static final String SSL_ENABLED_PROTOCOLS = System
+			.getProperty("org.jboss.xnio3.ssl.protocols");
+	/**
+	 * The maximum number of TLS sessions kept to be resumed by the
+	 * reconnecting clients
+	 */
+	public static final int SSL_SESSION_CACHE_SIZE = Integer.getInteger(
+			"org.jboss.xnio3.ssl.session.cacheSize", 10000);
+	/**
+	 * The time (in seconds) after which a cached TLS session can't be resumed
+	 * anymore
+	 */
+	public static final int SSL_SESSION_TIMEOUT = Integer.getInteger(
+			"org.jboss.xnio3.ssl.session.timeout", 3600);
+
+	/**
+	 * Whether the connections are handled by blocking
+	 * {@link Xnio3ClientManager}s, a thread per connection, instead of the
+	 * read and write listeners
+	 */
+	public static final boolean BLOCKING_HANDLERS = Boolean.getBoolean("org.jboss.xnio3.blocking");
+	/**
+	 * Whether the blocking handlers run on virtual threads when the JVM
+	 * supports them, else on platform threads
+	 */
+	public static final boolean VIRTUAL_THREADS = Boolean.valueOf(System.getProperty(
+			"org.jboss.xnio3.blocking.virtual", "true"));
 
 	/**
 	 * Create a new instance of {@code XnioUtils}
@@ -0,0 +1,208 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@code ContentIndexTest}
+ * 
+ * Created on Oct 17, 2026 at 11:41:53 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public class ContentIndexTest {
+
+	private File root;
+
+	/**
+	 * Create an empty content directory
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.root = File.createTempFile("content", "");
+		this.root.delete();
+		this.root.mkdir();
+	}
+
+	/**
+	 * Delete the content directory
+	 */
+	@After
+	public void tearDown() {
+		delete(this.root);
+	}
+
+	/**
+	 * @param file
+	 */
+	private static void delete(File file) {
+		File files[] = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * @param name
+	 *            the name of the file relative to the content directory
+	 * @return the created file
+	 * @throws IOException
+	 */
+	private File create(String name) throws IOException {
+		File file = new File(this.root, name);
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+		return file;
+	}
+
+	/**
+	 * @param index
+	 * @param name
+	 * @return the path resolved for the name
+	 */
+	private static String lookup(ContentIndex index, String name) {
+		byte bytes[] = name.getBytes();
+		return index.lookup(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/**
+	 * The files of the sub-directories are named relatively to the content
+	 * directory, with or without a leading <i>/</i>
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLookup() throws IOException {
+		File a = create("a.txt");
+		File b = create("dir/b.txt");
+		File c = create("dir/sub/c.txt");
+		ContentIndex index = ContentIndex.load(this.root.getPath());
+		assertSame(index, ContentIndex.getInstance());
+		assertEquals(3, index.size());
+
+		assertEquals(a.getPath(), lookup(index, "a.txt"));
+		assertEquals(a.getPath(), lookup(index, "/a.txt"));
+		assertEquals(b.getPath(), lookup(index, "dir/b.txt"));
+		assertEquals(c.getPath(), lookup(index, "/dir/sub/c.txt"));
+	}
+
+	/**
+	 * Unknown names, prefixes of known names, directories and empty names
+	 * are not resolved
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testUnknownNames() throws IOException {
+		create("dir/b.txt");
+		ContentIndex index = ContentIndex.load(this.root.getPath());
+		assertNull(lookup(index, "b.txt"));
+		assertNull(lookup(index, "dir/b.tx"));
+		assertNull(lookup(index, "dir/b.txt2"));
+		assertNull(lookup(index, "dir"));
+		assertNull(lookup(index, "/"));
+		assertNull(lookup(index, ""));
+	}
+
+	/**
+	 * An empty index resolves nothing
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		ContentIndex index = ContentIndex.load(this.root.getPath());
+		assertEquals(0, index.size());
+		assertNull(lookup(index, "a.txt"));
+	}
+
+	/**
+	 * Enough similar names for the probe chains to run through several
+	 * slots: every name is found, names in between are not
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testProbeChains() throws IOException {
+		int n = 2000;
+		for (int i = 0; i < n; i++) {
+			create("f" + (i * 2));
+		}
+		ContentIndex index = ContentIndex.load(this.root.getPath());
+		assertEquals(n, index.size());
+		for (int i = 0; i < n; i++) {
+			assertEquals(new File(this.root, "f" + (i * 2)).getPath(), lookup(index, "f" + (i * 2)));
+			assertNull(lookup(index, "f" + (i * 2 + 1)));
+		}
+	}
+
+	/**
+	 * The name is read in place in a larger buffer, without moving its
+	 * position
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLookupInBuffer() throws IOException {
+		File file = create("dir/b.txt");
+		ContentIndex index = ContentIndex.load(this.root.getPath());
+		ByteBuffer buffer = ByteBuffer.wrap("GET /dir/b.txt\r\n".getBytes());
+		assertEquals(file.getPath(), index.lookup(buffer, 4, 14));
+		assertNull(index.lookup(buffer, 4, 13));
+		assertEquals(0, buffer.position());
+	}
+
+	/**
+	 * A missing directory is rejected and the current index is kept
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMissingDirectory() throws IOException {
+		ContentIndex index = ContentIndex.load(this.root.getPath());
+		try {
+			ContentIndex.load(new File(this.root, "missing").getPath());
+			fail("A missing directory must be rejected");
+		} catch (FileNotFoundException e) {
+			// expected
+		}
+		assertSame(index, ContentIndex.getInstance());
+	}
+}
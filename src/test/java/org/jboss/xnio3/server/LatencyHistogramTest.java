@@ -0,0 +1,155 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * {@code LatencyHistogramTest}
+ * 
+ * Created on Oct 17, 2026 at 11:58:06 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public class LatencyHistogramTest {
+
+	private static final int LAST_BUCKET = LatencyHistogram.indexOf(Long.MAX_VALUE);
+
+	/**
+	 * The small values have a bucket of their own
+	 */
+	@Test
+	public void testExactBuckets() {
+		for (int value = 0; value < 32; value++) {
+			assertEquals(value, LatencyHistogram.indexOf(value));
+			assertEquals(value, LatencyHistogram.highestValueOf(value));
+		}
+	}
+
+	/**
+	 * The buckets are contiguous: the highest value of a bucket is in the
+	 * bucket and the next value is in the next bucket, up to
+	 * {@link Long#MAX_VALUE}
+	 */
+	@Test
+	public void testBucketBoundaries() {
+		for (int index = 0; index < LAST_BUCKET; index++) {
+			long highest = LatencyHistogram.highestValueOf(index);
+			assertEquals(index, LatencyHistogram.indexOf(highest));
+			assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1));
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LAST_BUCKET));
+	}
+
+	/**
+	 * A bucket spans less than 1/16 of its values
+	 */
+	@Test
+	public void testPrecision() {
+		for (int index = 1; index <= LAST_BUCKET; index++) {
+			long lowest = LatencyHistogram.highestValueOf(index - 1) + 1;
+			long highest = LatencyHistogram.highestValueOf(index);
+			assertTrue(highest - lowest < Math.max(1, lowest / 16));
+		}
+	}
+
+	/**
+	 * An empty histogram
+	 */
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(99));
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getMax());
+	}
+
+	/**
+	 * The percentiles are not lower than the exact ones and not higher than
+	 * the precision of the histogram nor the maximum
+	 */
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1000; value >= 1; value--) {
+			histogram.record(value);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMean(), 0);
+		assertEquals(1000, histogram.getMax());
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(1000, histogram.getPercentile(100));
+
+		double percentiles[] = { 50, 90, 99, 99.9 };
+		for (double percentile : percentiles) {
+			long exact = (long) Math.ceil(10 * percentile);
+			long value = histogram.getPercentile(percentile);
+			assertTrue(value >= exact);
+			assertTrue(value <= Math.min(1000, exact + exact / 16));
+		}
+	}
+
+	/**
+	 * Negative values are recorded as 0
+	 */
+	@Test
+	public void testNegative() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getMax());
+	}
+
+	/**
+	 * Values recorded by concurrent threads are all counted
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentRecords() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread threads[] = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final long base = i * 10000L;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 1; j <= 10000; j++) {
+						histogram.record(base + j);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, histogram.getCount());
+		assertEquals(40000, histogram.getMax());
+		assertEquals(40000, histogram.getPercentile(100));
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jboss.xnio3.server.RequestDecoder.Framing;
+import org.junit.Test;
+
+/**
+ * {@code RequestDecoderTest}
+ * 
+ * The requests are decoded from a buffer handled like the read buffer of a
+ * connection: filled, flipped, decoded and compacted between two reads.
+ * 
+ * Created on Oct 17, 2026 at 11:02:14 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public class RequestDecoderTest {
+
+	/**
+	 * Append the bytes to the buffer, in write mode, and flip it
+	 * 
+	 * @param buffer
+	 * @param bytes
+	 */
+	private static void read(ByteBuffer buffer, byte bytes[]) {
+		buffer.put(bytes);
+		buffer.flip();
+	}
+
+	/**
+	 * @param buffer
+	 * @param decoder
+	 * @return the last decoded request
+	 */
+	private static String request(ByteBuffer buffer, RequestDecoder decoder) {
+		byte bytes[] = new byte[decoder.getLength()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(decoder.getStart() + i);
+		}
+		return new String(bytes);
+	}
+
+	/**
+	 * @param request
+	 * @return the request prefixed by its length
+	 */
+	private static byte[] frame(String request) {
+		ByteBuffer frame = ByteBuffer.allocate(4 + request.length());
+		frame.putInt(request.length()).put(request.getBytes());
+		return frame.array();
+	}
+
+	/**
+	 * Several lines read at once, with and without <i>CR</i>
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLines() throws IOException {
+		RequestDecoder decoder = new RequestDecoder(Framing.DELIMITER);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		read(buffer, "a\r\nbb\n\r\nccc".getBytes());
+
+		assertTrue(decoder.decode(buffer));
+		assertEquals("a", request(buffer, decoder));
+		assertTrue(decoder.decode(buffer));
+		assertEquals("bb", request(buffer, decoder));
+		assertTrue(decoder.decode(buffer));
+		assertEquals("", request(buffer, decoder));
+		assertFalse(decoder.decode(buffer));
+		// the incomplete request is left in the buffer
+		assertEquals(3, buffer.remaining());
+	}
+
+	/**
+	 * A line split across reads, the <i>CR</i> and the <i>LF</i> in two
+	 * different reads, the buffer compacted between the reads
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSplitLine() throws IOException {
+		RequestDecoder decoder = new RequestDecoder(Framing.DELIMITER);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		read(buffer, "x\nhel".getBytes());
+		assertTrue(decoder.decode(buffer));
+		assertFalse(decoder.decode(buffer));
+		// the incomplete request moves to the beginning of the buffer
+		buffer.compact();
+
+		read(buffer, "lo\r".getBytes());
+		assertFalse(decoder.decode(buffer));
+		buffer.compact();
+
+		read(buffer, "\nnext".getBytes());
+		assertTrue(decoder.decode(buffer));
+		assertEquals(0, decoder.getStart());
+		assertEquals("hello", request(buffer, decoder));
+		assertFalse(decoder.decode(buffer));
+		buffer.compact();
+
+		read(buffer, "\n".getBytes());
+		assertTrue(decoder.decode(buffer));
+		assertEquals("next", request(buffer, decoder));
+	}
+
+	/**
+	 * A line feed found past the bytes already scanned
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testScannedBytesAreSkipped() throws IOException {
+		RequestDecoder decoder = new RequestDecoder(Framing.DELIMITER);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		read(buffer, "abc".getBytes());
+		assertFalse(decoder.decode(buffer));
+		buffer.compact();
+		// a line feed rewritten in the scanned region is not seen again: the
+		// decoder only scans the new bytes
+		buffer.put(1, (byte) '\n');
+		read(buffer, "d\n".getBytes());
+		assertTrue(decoder.decode(buffer));
+		assertEquals(5, buffer.position());
+	}
+
+	/**
+	 * The scanned bytes are forgotten by {@link RequestDecoder#reset()}
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReset() throws IOException {
+		RequestDecoder decoder = new RequestDecoder(Framing.DELIMITER);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		read(buffer, "abcdef".getBytes());
+		assertFalse(decoder.decode(buffer));
+		decoder.reset();
+
+		ByteBuffer other = ByteBuffer.allocate(64);
+		read(other, "a\n".getBytes());
+		assertTrue(decoder.decode(other));
+		assertEquals("a", request(other, decoder));
+	}
+
+	/**
+	 * A line filling the largest buffer is rejected, a line filling a buffer
+	 * which may still grow is not
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLineTooLarge() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		read(buffer, "12345678".getBytes());
+		assertFalse(new RequestDecoder(Framing.DELIMITER, 16).decode(buffer));
+
+		try {
+			new RequestDecoder(Framing.DELIMITER).decode(buffer);
+			fail("A request filling the buffer must be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Several frames read at once
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testFrames() throws IOException {
+		RequestDecoder decoder = new RequestDecoder(Framing.LENGTH_PREFIXED);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put(frame("one")).put(frame("")).put(frame("three"));
+		buffer.flip();
+
+		assertTrue(decoder.decode(buffer));
+		assertEquals("one", request(buffer, decoder));
+		assertTrue(decoder.decode(buffer));
+		assertEquals("", request(buffer, decoder));
+		assertTrue(decoder.decode(buffer));
+		assertEquals("three", request(buffer, decoder));
+		assertFalse(decoder.decode(buffer));
+	}
+
+	/**
+	 * A frame read a byte at a time: the length field itself is split
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSplitFrame() throws IOException {
+		RequestDecoder decoder = new RequestDecoder(Framing.LENGTH_PREFIXED);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		byte bytes[] = frame("hello");
+		for (int i = 0; i < bytes.length - 1; i++) {
+			read(buffer, new byte[] { bytes[i] });
+			assertFalse(decoder.decode(buffer));
+			buffer.compact();
+		}
+		read(buffer, new byte[] { bytes[bytes.length - 1] });
+		assertTrue(decoder.decode(buffer));
+		assertEquals("hello", request(buffer, decoder));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	/**
+	 * A negative length and a length larger than the largest buffer are
+	 * rejected as soon as the length field is read
+	 */
+	@Test
+	public void testInvalidLength() {
+		int lengths[] = { -1, 16 - 4 + 1 };
+		for (int length : lengths) {
+			ByteBuffer buffer = ByteBuffer.allocate(16);
+			buffer.putInt(length).flip();
+			try {
+				new RequestDecoder(Framing.LENGTH_PREFIXED, 16).decode(buffer);
+				fail("The length " + length + " must be rejected");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * The largest frame fitting in the buffer
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLargestFrame() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		read(buffer, frame("123456789012"));
+		RequestDecoder decoder = new RequestDecoder(Framing.LENGTH_PREFIXED);
+		assertTrue(decoder.decode(buffer));
+		assertEquals(12, decoder.getLength());
+	}
+
+	/**
+	 * The framing names are parsed case insensitively
+	 */
+	@Test
+	public void testParseFraming() {
+		assertEquals(Framing.LENGTH_PREFIXED, Framing.parse("length_prefixed", Framing.DELIMITER));
+		assertEquals(Framing.DELIMITER, Framing.parse("unknown", Framing.DELIMITER));
+		assertEquals(Framing.DELIMITER, Framing.parse(null, Framing.DELIMITER));
+	}
+}
@@ -0,0 +1,263 @@
+/**
+ * JBoss, Home of Professional Open Source. Copyright 2011, Red Hat, Inc., and
+ * individual contributors as indicated by the @author tags. See the
+ * copyright.txt file in the distribution for a full listing of individual
+ * contributors.
+ * 
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ * 
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+package org.jboss.xnio3.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.xnio3.server.TimerWheel.Timeout;
+import org.junit.Test;
+import org.xnio.XnioExecutor;
+
+/**
+ * {@code TimerWheelTest}
+ * 
+ * The wheel is ticked by hand: the executor only records that a tick was
+ * requested.
+ * 
+ * Created on Oct 17, 2026 at 11:24:37 PM
+ * 
+ * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+ */
+public class TimerWheelTest {
+
+	/**
+	 * @param millis
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A timeout expires once its deadline is passed
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testExpire() throws Exception {
+		Executor executor = new Executor();
+		TimerWheel wheel = new TimerWheel(executor, 1);
+		Counter timeout = new Counter();
+		wheel.schedule(timeout, 5, TimeUnit.MILLISECONDS);
+		assertEquals(1, executor.ticks);
+		assertEquals(1, wheel.getSize());
+
+		sleep(20);
+		wheel.run();
+		assertEquals(1, timeout.expired);
+		assertEquals(0, wheel.getSize());
+		// the wheel stops ticking once empty
+		assertEquals(1, executor.ticks);
+
+		// and starts again with the next timeout
+		wheel.schedule(timeout, 5, TimeUnit.MILLISECONDS);
+		assertEquals(2, executor.ticks);
+	}
+
+	/**
+	 * A cancelled timeout never expires
+	 */
+	@Test
+	public void testCancel() {
+		TimerWheel wheel = new TimerWheel(new Executor(), 1);
+		Counter timeout = new Counter();
+		Counter other = new Counter();
+		wheel.schedule(timeout, 5, TimeUnit.MILLISECONDS);
+		wheel.schedule(other, 5, TimeUnit.MILLISECONDS);
+		assertTrue(wheel.cancel(timeout));
+		assertFalse(wheel.cancel(timeout));
+		assertEquals(1, wheel.getSize());
+
+		sleep(20);
+		wheel.run();
+		assertEquals(0, timeout.expired);
+		assertEquals(1, other.expired);
+	}
+
+	/**
+	 * Scheduling a pending timeout again replaces its deadline
+	 */
+	@Test
+	public void testReschedule() {
+		TimerWheel wheel = new TimerWheel(new Executor(), 10);
+		Counter timeout = new Counter();
+		wheel.schedule(timeout, 20, TimeUnit.MILLISECONDS);
+		wheel.schedule(timeout, 1, TimeUnit.SECONDS);
+		assertEquals(1, wheel.getSize());
+
+		sleep(100);
+		wheel.run();
+		assertEquals(0, timeout.expired);
+		assertEquals(1, wheel.getSize());
+	}
+
+	/**
+	 * A timeout further than a turn of the wheel shares its bucket with
+	 * earlier deadlines and survives the first visit of the bucket
+	 */
+	@Test
+	public void testWrapAround() {
+		TimerWheel wheel = new TimerWheel(new Executor(), 1);
+		Counter timeout = new Counter();
+		wheel.schedule(timeout, 600, TimeUnit.MILLISECONDS);
+
+		sleep(300);
+		wheel.run();
+		sleep(250);
+		// more than a turn of the wheel has elapsed
+		wheel.run();
+		assertEquals(0, timeout.expired);
+
+		sleep(100);
+		wheel.run();
+		assertEquals(1, timeout.expired);
+		assertEquals(0, wheel.getSize());
+	}
+
+	/**
+	 * The deadline is counted from the current time even if the wheel lags
+	 * behind
+	 */
+	@Test
+	public void testDeadlineFromCurrentTick() {
+		TimerWheel wheel = new TimerWheel(new Executor(), 10);
+		// keeps the wheel ticking without being ticked
+		wheel.schedule(new Counter(), 10, TimeUnit.SECONDS);
+		sleep(200);
+
+		Counter timeout = new Counter();
+		wheel.schedule(timeout, 50, TimeUnit.MILLISECONDS);
+		wheel.run();
+		assertEquals(0, timeout.expired);
+
+		sleep(100);
+		wheel.run();
+		assertEquals(1, timeout.expired);
+	}
+
+	/**
+	 * A timeout may be scheduled again while it expires
+	 */
+	@Test
+	public void testScheduleOnExpire() {
+		final TimerWheel wheel = new TimerWheel(new Executor(), 1);
+		Counter timeout = new Counter() {
+			@Override
+			protected void expire() {
+				super.expire();
+				wheel.schedule(this, 5, TimeUnit.MILLISECONDS);
+			}
+		};
+		wheel.schedule(timeout, 5, TimeUnit.MILLISECONDS);
+		sleep(20);
+		wheel.run();
+		assertEquals(1, timeout.expired);
+		assertEquals(1, wheel.getSize());
+
+		sleep(20);
+		wheel.run();
+		assertEquals(2, timeout.expired);
+	}
+
+	/**
+	 * A timeout belongs to a single wheel at a time
+	 */
+	@Test
+	public void testScheduleOnAnotherWheel() {
+		Counter timeout = new Counter();
+		new TimerWheel(new Executor(), 1).schedule(timeout, 5, TimeUnit.MILLISECONDS);
+		TimerWheel wheel = new TimerWheel(new Executor(), 1);
+		assertFalse(wheel.cancel(timeout));
+		try {
+			wheel.schedule(timeout, 5, TimeUnit.MILLISECONDS);
+			fail("The timeout is scheduled on another wheel");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * {@code Counter}
+	 * 
+	 * Counts its expirations
+	 * 
+	 * Created on Oct 17, 2026 at 11:25:02 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static class Counter extends Timeout {
+
+		private int expired;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.jboss.xnio3.server.TimerWheel.Timeout#expire()
+		 */
+		@Override
+		protected void expire() {
+			this.expired++;
+		}
+	}
+
+	/**
+	 * {@code Executor}
+	 * 
+	 * Counts the ticks requested by the wheel without running them
+	 * 
+	 * Created on Oct 17, 2026 at 11:25:19 PM
+	 * 
+	 * @author <a href="mailto:nbenothm@redhat.com">Nabil Benothman</a>
+	 */
+	private static class Executor implements XnioExecutor {
+
+		private int ticks;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+		 */
+		public void execute(Runnable command) {
+			command.run();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.xnio.XnioExecutor#executeAfter(java.lang.Runnable, long,
+		 * java.util.concurrent.TimeUnit)
+		 */
+		public Key executeAfter(Runnable command, long time, TimeUnit unit) {
+			this.ticks++;
+			return Key.IMMEDIATE;
+		}
+	}
+}